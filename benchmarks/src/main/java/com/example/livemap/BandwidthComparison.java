@@ -0,0 +1,108 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Estimated map bytes per second for one viewer, pixel cursors against native cursors (cursor-mode). Players walk
+ * over a 1:1 map for a simulated minute; at every refresh the overlay is composed and repainted onto an in-memory
+ * canvas, and the same packet estimates that /livemap stats reports are added up. Not a JMH benchmark:
+ * 'java -cp target/benchmarks.jar com.example.livemap.BandwidthComparison [players] [refresh ticks]'
+ */
+public final class BandwidthComparison {
+
+    private static final byte[] PLAYER_COLOR_IDS = new byte[] {
+            34, 58, 86, 98, 114, 126, 78, 90, 102, 110, 66, 74
+    };
+
+    private static final int SECONDS = 60;
+
+    private BandwidthComparison() {
+    }
+
+    public static void main(String[] args) {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int refreshTicks = args.length > 1 ? Math.max(1, Integer.parseInt(args[1])) : 5;
+
+        System.out.printf(Locale.ROOT, "%d players walking on one map, refreshed every %d ticks%n", players, refreshTicks);
+        for (boolean showYLevel : new boolean[] { false, true }) {
+            for (boolean nativeCursors : new boolean[] { false, true }) {
+                long[] bytes = simulate(players, refreshTicks, showYLevel, nativeCursors);
+                System.out.printf(Locale.ROOT, "%-8s %-6s  pixel patches %8.0f B/s  cursor lists %6.0f B/s  total %8.0f B/s%n",
+                        showYLevel ? "names+y" : "names", nativeCursors ? "native" : "pixels", (double) bytes[0] / SECONDS,
+                        (double) bytes[1] / SECONDS, (double) (bytes[0] + bytes[1]) / SECONDS);
+            }
+        }
+    }
+
+    // Pixel patch bytes and cursor list bytes sent to one viewer over the simulated time.
+    private static long[] simulate(int players, int refreshTicks, boolean showYLevel, boolean nativeCursors) {
+        UUID worldId = new UUID(0L, 1L);
+        MapWall wall = MapWall.single(new MapArea(1, worldId, 64, 64, 1));
+        OverlayComposer composer = new OverlayComposer(PLAYER_COLOR_IDS, new LabelCache(256), new CursorStamps(64),
+                true, showYLevel, null, 0, 0, false, nativeCursors);
+
+        // Same seed for both modes, so both see the same walk.
+        Random random = new Random(42L);
+        UUID[] ids = new UUID[players];
+        String[] names = new String[players];
+        UUID[] worlds = new UUID[players];
+        int[] x = new int[players];
+        int[] y = new int[players];
+        int[] z = new int[players];
+        float[] yaw = new float[players];
+        for (int i = 0; i < players; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong());
+            names[i] = "Player" + i;
+            worlds[i] = worldId;
+            x[i] = 16 + random.nextInt(96);
+            y[i] = 64;
+            z[i] = 16 + random.nextInt(96);
+            yaw[i] = random.nextFloat() * 360f - 180f;
+        }
+
+        OverlayLayer layer = new OverlayLayer();
+        WallCanvas wallCanvas = WallCanvas.of(layer);
+        FakeMapCanvas canvas = new FakeMapCanvas();
+        ViewerCanvas viewer = new ViewerCanvas();
+
+        long patchBytes = 0;
+        long cursorBytes = 0;
+        for (int tick = 0; tick < SECONDS * 20; tick++) {
+            if (tick % refreshTicks == 0) {
+                // Walking speed is about 4.3 blocks a second.
+                int steps = Math.max(1, Math.round(4.3f * refreshTicks / 20f));
+                for (int i = 0; i < players; i++) {
+                    yaw[i] += random.nextFloat() * 60f - 30f;
+                    double radians = Math.toRadians(yaw[i]);
+                    x[i] = Math.floorMod(x[i] + (int) Math.round(-Math.sin(radians) * steps), 128);
+                    z[i] = Math.floorMod(z[i] + (int) Math.round(Math.cos(radians) * steps), 128);
+                }
+                PlayerSnapshot snapshot = PlayerSnapshot.of(ids, names, worlds, x, y, z, yaw, PLAYER_COLOR_IDS.length);
+                composer.compose(snapshot, wall, wallCanvas);
+                viewer.repaint(canvas, false, null, layer, null);
+                patchBytes += viewer.patchBytes;
+            }
+            if (tick % (20 / MapPacketSize.CURSOR_RESENDS_PER_SECOND) == 0) {
+                cursorBytes += viewer.cursorListBytes;
+            }
+        }
+        return new long[] { patchBytes, cursorBytes };
+    }
+}
@@ -0,0 +1,105 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.map.MapCanvas;
+import org.bukkit.map.MapCursorCollection;
+import org.bukkit.map.MapFont;
+import org.bukkit.map.MapView;
+
+import java.awt.Color;
+import java.awt.Image;
+import java.util.Arrays;
+
+/**
+ * In-memory 128x128 canvas with no server behind it. Only the pixel and cursor methods the renderer uses are supported.
+ */
+final class FakeMapCanvas implements MapCanvas {
+
+    private final byte[] pixels = new byte[OverlayBuffer.SIZE * OverlayBuffer.SIZE];
+    private final byte[] base = new byte[OverlayBuffer.SIZE * OverlayBuffer.SIZE];
+    private MapCursorCollection cursors = new MapCursorCollection();
+
+    FakeMapCanvas() {
+        // Some explored-looking terrain, so restores write real bytes back.
+        for (int i = 0; i < base.length; i++) {
+            base[i] = (byte) (4 + (i % 7) * 4);
+        }
+        reset();
+    }
+
+    void reset() {
+        Arrays.fill(pixels, (byte) -1);
+    }
+
+    @Override
+    public MapView getMapView() {
+        return null;
+    }
+
+    @Override
+    public MapCursorCollection getCursors() {
+        return cursors;
+    }
+
+    @Override
+    public void setCursors(MapCursorCollection cursors) {
+        this.cursors = cursors;
+    }
+
+    @Override
+    public void setPixel(int x, int y, byte color) {
+        if (x < 0 || y < 0 || x >= OverlayBuffer.SIZE || y >= OverlayBuffer.SIZE) return;
+        pixels[(y << 7) | x] = color;
+    }
+
+    @Override
+    public byte getPixel(int x, int y) {
+        if (x < 0 || y < 0 || x >= OverlayBuffer.SIZE || y >= OverlayBuffer.SIZE) return 0;
+        return pixels[(y << 7) | x];
+    }
+
+    @Override
+    public byte getBasePixel(int x, int y) {
+        if (x < 0 || y < 0 || x >= OverlayBuffer.SIZE || y >= OverlayBuffer.SIZE) return 0;
+        return base[(y << 7) | x];
+    }
+
+    @Override
+    public void setPixelColor(int x, int y, Color color) {
+        throw new UnsupportedOperationException("Not used by the renderer");
+    }
+
+    @Override
+    public Color getPixelColor(int x, int y) {
+        throw new UnsupportedOperationException("Not used by the renderer");
+    }
+
+    @Override
+    public Color getBasePixelColor(int x, int y) {
+        throw new UnsupportedOperationException("Not used by the renderer");
+    }
+
+    @Override
+    public void drawImage(int x, int y, Image image) {
+        throw new UnsupportedOperationException("Not used by the renderer");
+    }
+
+    @Override
+    public void drawText(int x, int y, MapFont font, String text) {
+        throw new UnsupportedOperationException("Not used by the renderer");
+    }
+}
@@ -0,0 +1,303 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The rendering hot path without a server: the drawing primitives, composing a map's overlay from a snapshot,
+ * and repainting a canvas the way PlayerTrackerRenderer.render does. {@link #renderLatestOverlay} runs the
+ * renderer's own {@link MapRenderPass} against a pipeline with no server behind it. Player positions come
+ * from a fixed seed, so runs are comparable.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    // The same palette the plugin hands to its composer.
+    private static final byte[] PLAYER_COLOR_IDS = new byte[] {
+            34, 58, 86, 98, 114, 126, 78, 90, 102, 110, 66, 74
+    };
+
+    @Param({"1", "16", "128"})
+    public int players;
+
+    // MapView.Scale ordinal: 0 is 1:1, 4 is 1:16.
+    @Param({"0", "2", "4"})
+    public int scale;
+
+    @Param({"none", "names", "names+y"})
+    public String labels;
+
+    // cluster-radius-pixels; 0 draws every player and label as before.
+    @Param({"0", "6"})
+    public int clusterRadius;
+
+    private UUID[] ids;
+    private String[] names;
+    private UUID[] worlds;
+    private int[] x;
+    private int[] y;
+    private int[] z;
+    private float[] yaw;
+    private PlayerSnapshot snapshot;
+    private MapWall wall;
+    private OverlayComposer composer;
+    private LabelCache.Label label;
+
+    private OverlayLayer layer;
+    private WallCanvas wallCanvas;
+    private OverlayLayer composed;
+    private byte[] base;
+
+    private FakeMapCanvas canvas;
+    private OverlayBuffer buffer;
+    private ViewerCanvas viewerCanvas;
+
+    private CompositionPipeline pipeline;
+    private MapRenderPass renderPass;
+    private ViewerCanvas renderState;
+
+    @Setup
+    public void setUp() {
+        int scaleFactor = 1 << scale;
+        UUID worldId = new UUID(0L, 1L);
+        MapArea area = new MapArea(1, worldId, 64 * scaleFactor, 64 * scaleFactor, scaleFactor);
+        wall = MapWall.single(area);
+
+        // Players spread over the map plus a margin around it, so some of them are culled.
+        Random random = new Random(42L);
+        int span = 128 * scaleFactor;
+        ids = new UUID[players];
+        names = new String[players];
+        worlds = new UUID[players];
+        x = new int[players];
+        y = new int[players];
+        z = new int[players];
+        yaw = new float[players];
+        for (int i = 0; i < players; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong());
+            names[i] = "Player" + i;
+            worlds[i] = worldId;
+            x[i] = area.originX() - span / 8 + random.nextInt(span + span / 4);
+            y[i] = -64 + random.nextInt(384);
+            z[i] = area.originZ() - span / 8 + random.nextInt(span + span / 4);
+            yaw[i] = random.nextFloat() * 360f - 180f;
+        }
+        snapshot = PlayerSnapshot.of(ids, names, worlds, x, y, z, yaw, PLAYER_COLOR_IDS.length);
+
+        LabelCache labelCache = new LabelCache(256);
+        composer = new OverlayComposer(PLAYER_COLOR_IDS, labelCache, new CursorStamps(64),
+                !labels.equals("none"), labels.equals("names+y"), null, 0, clusterRadius, clusterRadius > 0, false);
+        label = labelCache.get("Player0");
+
+        layer = new OverlayLayer();
+        wallCanvas = WallCanvas.of(layer);
+        composed = new OverlayLayer();
+        composer.compose(snapshot, wall, WallCanvas.of(composed));
+
+        base = new byte[OverlayBuffer.SIZE * OverlayBuffer.SIZE];
+        for (int i = 0; i < base.length; i++) {
+            base[i] = (byte) (8 + (i % 5) * 4);
+        }
+
+        canvas = new FakeMapCanvas();
+        buffer = new OverlayBuffer();
+        viewerCanvas = new ViewerCanvas();
+
+        pipeline = new CompositionPipeline(1, Logger.getLogger("LiveMaps"), new PerformanceMetrics());
+        pipeline.submit(wall, new int[] { 1 }, snapshot, composer);
+        while (pipeline.latest(1) == null) {
+            Thread.onSpinWait();
+        }
+        UUID[] viewers = new UUID[8];
+        for (int i = 0; i < viewers.length; i++) {
+            viewers[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        renderPass = new MapRenderPass(new BenchmarkContext(pipeline, viewers));
+        renderState = new ViewerCanvas();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    // --- PRIMITIVES ---
+
+    // 16x16 block of undo-logged pixel writes, then the restore that undoes them.
+    @Benchmark
+    public int setPixelAndRestore() {
+        for (int row = 56; row < 72; row++) {
+            for (int col = 56; col < 72; col++) {
+                buffer.setPixel(canvas, col, row, (byte) 34);
+            }
+        }
+        return buffer.restore(canvas);
+    }
+
+    @Benchmark
+    public OverlayLayer drawSmartText() {
+        layer.clear();
+        composer.drawSmartText(wallCanvas, 40, 40, label, OverlayComposer.NAME_COLOR_ID);
+        return layer;
+    }
+
+    @Benchmark
+    public OverlayLayer drawSmartRectangle() {
+        layer.clear();
+        composer.drawSmartRectangle(wallCanvas, 39, 39, label.width + 2, label.height + 2, OverlayComposer.LABEL_BACKGROUND_COLOR_ID);
+        return layer;
+    }
+
+    // Cursor body plus direction line; the line is a pre-rasterized stamp per yaw bucket.
+    @Benchmark
+    public OverlayLayer drawLargeIcon() {
+        layer.clear();
+        composer.drawLargeIcon(wallCanvas, 64, 64, 37.5f, PLAYER_COLOR_IDS[0], OverlayComposer.DIRECTION_LINE_COLOR_ID);
+        return layer;
+    }
+
+    // Blits the composed overlay and restores the background again, as consecutive renders do.
+    @Benchmark
+    public int restoreMapBackground() {
+        composed.blitTo(buffer, canvas);
+        return buffer.restore(canvas);
+    }
+
+    // --- FULL PATH ---
+
+    // Building the spatial grid of a snapshot; capture adds the Bukkit reads and visibility checks on top.
+    @Benchmark
+    public PlayerSnapshot buildSnapshot() {
+        return PlayerSnapshot.of(ids, names, worlds, x, y, z, yaw, PLAYER_COLOR_IDS.length);
+    }
+
+    @Benchmark
+    public int compose() {
+        return composer.compose(snapshot, wall, wallCanvas);
+    }
+
+    // What render does once a new overlay is ready: restore, drop cursors, blit.
+    @Benchmark
+    public int render() {
+        return viewerCanvas.repaint(canvas, false, null, composed, null);
+    }
+
+    // A render that also repaints the pre-rendered terrain underneath.
+    @Benchmark
+    public int renderWithBaseLayer() {
+        return viewerCanvas.repaint(canvas, true, base, composed, null);
+    }
+
+    // A shared canvas render call once a worker published a newer overlay: the version check, the
+    // deferral check, the repaint and the accounting.
+    @Benchmark
+    public int renderLatestOverlay() {
+        renderState.renderedVersion = -1;
+        renderPass.render(1, canvas, renderState, null);
+        return renderState.patchBytes;
+    }
+
+    // Snapshot to pixels on one thread: compose the overlay, then render it.
+    @Benchmark
+    public int composeAndRender() {
+        composer.compose(snapshot, wall, wallCanvas);
+        return viewerCanvas.repaint(canvas, false, null, layer, null);
+    }
+
+    // The plugin state a render reads: no terrain, no heatmap, no budget, and eight viewers to charge.
+    private static final class BenchmarkContext implements MapRenderPass.Context {
+        private final CompositionPipeline composition;
+        private final UUID[] viewers;
+        // Never opened, so it reads as a store without any terrain and touches no files.
+        private final BaseLayerStore baseLayers = new BaseLayerStore(new File("base-layers.dat"), new File("base-layers.idx"),
+                Logger.getLogger("LiveMaps"));
+        private final PerformanceMetrics metrics = new PerformanceMetrics();
+        private final BandwidthBudget bandwidth = new BandwidthBudget(0L);
+
+        BenchmarkContext(CompositionPipeline composition, UUID[] viewers) {
+            this.composition = composition;
+            this.viewers = viewers;
+        }
+
+        @Override
+        public CompositionPipeline composition() {
+            return composition;
+        }
+
+        @Override
+        public BaseLayerStore baseLayers() {
+            return baseLayers;
+        }
+
+        @Override
+        public HeatmapStore heatmaps() {
+            return null;
+        }
+
+        @Override
+        public boolean isUpdateDeferred(int mapId, Player contextualViewer, boolean pending) {
+            return false;
+        }
+
+        @Override
+        public boolean composeViewerDelta(int mapId, Player viewer, ViewerCanvas state) {
+            return false;
+        }
+
+        @Override
+        public UUID[] viewerIds(int mapId) {
+            return viewers;
+        }
+
+        @Override
+        public PerformanceMetrics metrics() {
+            return metrics;
+        }
+
+        @Override
+        public BandwidthBudget bandwidth() {
+            return bandwidth;
+        }
+
+        @Override
+        public void cursorListSent(int mapId, int bytes) {
+        }
+    }
+}
@@ -0,0 +1,180 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Estimated map bytes sent to each player, and an optional per-player budget for them. Every canvas update
+ * is charged to each player who can see the map, using the {@link MapPacketSize} estimates. The budget is a
+ * token bucket refilled at the configured rate that holds at most one second of it. While a player is in
+ * debt, forced frame resends of maps they see are skipped; that traffic comes on top of the regular updates,
+ * so nobody else misses anything. Their contextual canvases are deferred by priority: a tile at the edge of
+ * the view range waits on the first byte of debt, the tile right in front of them only once they owe a full
+ * second. Maps in hand keep updating. A shared canvas is one update for every viewer, so it is only deferred
+ * when defer-shared-maps is on, and then one player over budget holds that map back for everyone who sees it.
+ * Main thread only.
+ */
+final class BandwidthBudget {
+
+    private final Map<UUID, Account> accounts = new HashMap<>();
+
+    // 0 means unlimited: bytes are still counted, nothing is deferred.
+    private long bytesPerSecond;
+    private long lastSampleNanos = -1L;
+
+    BandwidthBudget(long bytesPerSecond) {
+        configure(bytesPerSecond);
+    }
+
+    void configure(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(0L, bytesPerSecond);
+    }
+
+    long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    boolean isLimited() {
+        return bytesPerSecond > 0;
+    }
+
+    /**
+     * Charges the bytes of one update to every viewer.
+     */
+    void charge(UUID[] viewers, long bytes, long nowNanos) {
+        if (bytes <= 0) return;
+        for (UUID viewer : viewers) {
+            charge(viewer, bytes, nowNanos);
+        }
+    }
+
+    void charge(UUID viewer, long bytes, long nowNanos) {
+        if (bytes <= 0) return;
+        Account account = account(viewer, nowNanos);
+        account.tokens -= bytes;
+        account.windowBytes += bytes;
+        account.totalBytes += bytes;
+    }
+
+    // True if the player has used more than their budget allows; always false without a budget.
+    boolean isOverBudget(UUID player, long nowNanos) {
+        if (!isLimited()) return false;
+        Account account = accounts.get(player);
+        return account != null && refill(account, nowNanos) < 0;
+    }
+
+    boolean anyOverBudget(UUID[] viewers, long nowNanos) {
+        for (UUID viewer : viewers) {
+            if (isOverBudget(viewer, nowNanos)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * True if an update of the given priority has to wait for the player: priority 0 waits while they are
+     * in any debt, priority 1 only once they owe a full second of budget. Always false without a budget.
+     */
+    boolean mustWait(UUID player, float priority, long nowNanos) {
+        if (!isLimited()) return false;
+        Account account = accounts.get(player);
+        return account != null && refill(account, nowNanos) < -(long) (bytesPerSecond * priority);
+    }
+
+    // Same as mustWait for every viewer, each with their own priority.
+    boolean anyMustWait(UUID[] viewers, float[] priorities, long nowNanos) {
+        for (int i = 0; i < viewers.length; i++) {
+            if (mustWait(viewers[i], priorities[i], nowNanos)) return true;
+        }
+        return false;
+    }
+
+    // Counts a deferred update against every viewer that is over budget.
+    void deferred(UUID[] viewers, long nowNanos) {
+        for (UUID viewer : viewers) {
+            if (isOverBudget(viewer, nowNanos)) accounts.get(viewer).deferred++;
+        }
+    }
+
+    /**
+     * Updates every player's bytes-per-second figure from what was charged since the last sample.
+     */
+    void sample(long nowNanos) {
+        if (lastSampleNanos >= 0 && nowNanos > lastSampleNanos) {
+            for (Account account : accounts.values()) {
+                account.bytesPerSecond = account.windowBytes * 1e9 / (nowNanos - lastSampleNanos);
+                account.windowBytes = 0;
+            }
+        }
+        lastSampleNanos = nowNanos;
+    }
+
+    void forEach(BiConsumer<UUID, Account> visitor) {
+        accounts.forEach(visitor);
+    }
+
+    void remove(UUID player) {
+        accounts.remove(player);
+    }
+
+    void clear() {
+        accounts.clear();
+        lastSampleNanos = -1L;
+    }
+
+    private Account account(UUID player, long nowNanos) {
+        Account account = accounts.get(player);
+        if (account == null) {
+            account = new Account(bytesPerSecond, nowNanos);
+            accounts.put(player, account);
+        } else {
+            refill(account, nowNanos);
+        }
+        return account;
+    }
+
+    // Adds the tokens earned since the last refill, up to one second's worth, and returns the balance.
+    private long refill(Account account, long nowNanos) {
+        long elapsed = nowNanos - account.refilledNanos;
+        if (elapsed > 0) {
+            long earned = (long) (bytesPerSecond * (elapsed / 1e9));
+            account.tokens = Math.min(bytesPerSecond, account.tokens + earned);
+            account.refilledNanos = nowNanos;
+        }
+        return account.tokens;
+    }
+
+    /**
+     * One player's map traffic.
+     */
+    static final class Account {
+        private long tokens;
+        private long refilledNanos;
+        private long windowBytes = 0;
+
+        long totalBytes = 0;
+        double bytesPerSecond = 0.0;
+        long deferred = 0;
+
+        private Account(long tokens, long nowNanos) {
+            this.tokens = tokens;
+            this.refilledNanos = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * Pre-rendered terrain of each live map: 128x128 map color IDs drawn under the player overlay.
+ * Layers live in one memory-mapped file of fixed 16 KiB slots, with a small index file mapping map IDs
+ * to slots, so they survive restarts without being kept on the heap. Main thread only.
+ */
+final class BaseLayerStore {
+
+    static final int SLOT_SIZE = 128 * 128;
+
+    private static final int MAGIC = 0x4C4D424C; // "LMBL"
+    private static final int VERSION = 1;
+
+    // The data file grows by this many slots at a time.
+    private static final int GROW_SLOTS = 64;
+
+    private final File dataFile;
+    private final File indexFile;
+    private final Logger logger;
+
+    // Map ID to slot number, and map ID to a revision that changes whenever the layer is rewritten.
+    private final LongIntMap slots = new LongIntMap();
+    private final LongIntMap revisions = new LongIntMap();
+    private int usedSlots = 0;
+    private int nextRevision = 1;
+
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private int capacitySlots = 0;
+
+    BaseLayerStore(File dataFile, File indexFile, Logger logger) {
+        this.dataFile = dataFile;
+        this.indexFile = indexFile;
+        this.logger = logger;
+    }
+
+    /**
+     * Opens the data file and reads the slot index. Maps whose slot lies outside the data file are dropped.
+     */
+    void open() {
+        File parent = dataFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            logger.warning("Failed to create " + parent.getPath() + " for the base layer cache.");
+            return;
+        }
+
+        try {
+            channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            map((int) Math.max(GROW_SLOTS, channel.size() / SLOT_SIZE));
+        } catch (IOException e) {
+            logger.warning("Failed to open " + dataFile.getName() + ", pre-rendered terrain will not be kept: " + e.getMessage());
+            close();
+            return;
+        }
+
+        if (!indexFile.isFile()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warning("Ignoring " + indexFile.getName() + ": not a LiveMaps base layer index.");
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int mapId = in.readInt();
+                int slot = in.readInt();
+                if (slot < 0 || slot >= capacitySlots) continue;
+                slots.put(mapId, slot);
+                revisions.put(mapId, nextRevision++);
+                usedSlots = Math.max(usedSlots, slot + 1);
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to read " + indexFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    boolean contains(int mapId) {
+        return mapped != null && slots.containsKey(mapId);
+    }
+
+    /**
+     * Revision of the map's base layer, or 0 if it has none. Renderers redraw when it changes.
+     */
+    int revision(int mapId) {
+        return mapped == null ? 0 : revisions.get(mapId, 0);
+    }
+
+    /**
+     * Copies the map's base layer into the target array. Returns false if the map has none.
+     */
+    boolean read(int mapId, byte[] target) {
+        int slot = mapped == null ? -1 : slots.get(mapId, -1);
+        if (slot < 0) return false;
+        mapped.get(slot * SLOT_SIZE, target, 0, SLOT_SIZE);
+        return true;
+    }
+
+    /**
+     * Writes the map's base layer into its slot, assigning a new slot the first time. Only that slot
+     * is touched; the operating system writes it back to disk.
+     */
+    void put(int mapId, byte[] colors) {
+        if (mapped == null) return;
+
+        int slot = slots.get(mapId, -1);
+        if (slot < 0) {
+            slot = usedSlots;
+            if (slot >= capacitySlots) {
+                try {
+                    map(capacitySlots + GROW_SLOTS);
+                } catch (IOException e) {
+                    logger.warning("Failed to grow " + dataFile.getName() + ": " + e.getMessage());
+                    return;
+                }
+            }
+            usedSlots++;
+            slots.put(mapId, slot);
+            saveIndex();
+        }
+        mapped.put(slot * SLOT_SIZE, colors, 0, SLOT_SIZE);
+        revisions.put(mapId, nextRevision++);
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    /**
+     * Flushes the mapped slots to disk and releases the file.
+     */
+    void close() {
+        if (mapped != null) {
+            mapped.force();
+            mapped = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close " + dataFile.getName() + ": " + e.getMessage());
+            }
+            channel = null;
+        }
+        capacitySlots = 0;
+    }
+
+    private void map(int capacity) throws IOException {
+        if ((long) capacity * SLOT_SIZE > Integer.MAX_VALUE) {
+            throw new IOException("base layer cache is full (" + capacitySlots + " maps)");
+        }
+        if (mapped != null) mapped.force();
+        // Mapping past the end of the file extends it.
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * SLOT_SIZE);
+        capacitySlots = capacity;
+    }
+
+    // Rewrites the small slot index through a temporary file, like the map registry.
+    private void saveIndex() {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(slots.size());
+            for (int i = 0; i < slots.capacity(); i++) {
+                if (!slots.isUsed(i)) continue;
+                out.writeInt((int) slots.keyAt(i));
+                out.writeInt(slots.valueAt(i));
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to write " + temp.getName() + ": " + e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Failed to replace " + indexFile.getName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Composes map overlays on a worker pool. Each map has two layers: the published one, which the
+ * main thread copies onto the canvas, and a back layer that at most one worker job draws into.
+ * Finished layers are swapped in atomically, so the main thread only ever blits. A job covers a
+ * whole {@link MapWall} and publishes all of its tiles together.
+ */
+final class CompositionPipeline {
+
+    private final ExecutorService workers;
+    private final Logger logger;
+    private final PerformanceMetrics metrics;
+
+    // Only touched from the main thread; workers only see their own Slot.
+    private final Map<Integer, Slot> slots = new HashMap<>();
+
+    CompositionPipeline(int threads, Logger logger, PerformanceMetrics metrics) {
+        this.logger = logger;
+        this.metrics = metrics;
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "LiveMaps-Compose-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), factory);
+    }
+
+    /**
+     * Queues a composition of the wall at the given tile versions, unless those versions were already
+     * queued or a job for one of its tiles is still running (the next snapshot will pick it up). Main thread only.
+     *
+     * @param versions version of each wall tile slot, -1 for holes
+     */
+    void submit(MapWall wall, int[] versions, PlayerSnapshot snapshot, OverlayComposer composer) {
+        Slot[] wallSlots = new Slot[wall.size()];
+        boolean changed = false;
+        for (int i = 0; i < wallSlots.length; i++) {
+            MapArea tile = wall.tileAt(i);
+            if (tile == null) continue;
+            wallSlots[i] = slots.computeIfAbsent(tile.mapId, id -> new Slot());
+            changed |= wallSlots[i].submittedVersion != versions[i];
+        }
+        if (!changed || !acquire(wallSlots)) return;
+
+        OverlayLayer[] targets = new OverlayLayer[wallSlots.length];
+        for (int i = 0; i < wallSlots.length; i++) {
+            if (wallSlots[i] == null) continue;
+            wallSlots[i].submittedVersion = versions[i];
+            targets[i] = wallSlots[i].back;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    long started = System.nanoTime();
+                    int drawn = composer.compose(snapshot, wall, new WallCanvas(targets, wall.tilesWide, wall.tilesHigh));
+                    if (drawn < 0) {
+                        // This job fell too far behind; the next snapshot submits the wall again.
+                        forgetSubmitted(wallSlots);
+                        return;
+                    }
+                    metrics.recordSince(PerformanceMetrics.Timer.COMPOSE, started);
+                    // Every other snapshot player was skipped by the spatial query or fell into a hole of the wall.
+                    metrics.add(PerformanceMetrics.Counter.PLAYERS_PROJECTED, drawn);
+                    metrics.add(PerformanceMetrics.Counter.PLAYERS_CULLED, snapshot.size() - drawn);
+                    for (int i = 0; i < wallSlots.length; i++) {
+                        Slot slot = wallSlots[i];
+                        if (slot == null) continue;
+                        Composed previous = slot.published.getAndSet(new Composed(versions[i], targets[i]));
+                        slot.back = (previous == null) ? new OverlayLayer() : previous.layer;
+                    }
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Failed to compose the overlay of a " + wall.tilesWide + "x"
+                            + wall.tilesHigh + " map wall", e);
+                    forgetSubmitted(wallSlots);
+                } finally {
+                    release(wallSlots, wallSlots.length);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            forgetSubmitted(wallSlots);
+            release(wallSlots, wallSlots.length);
+        }
+    }
+
+    // Nothing was published, so the same versions must be accepted again on the next snapshot.
+    private static void forgetSubmitted(Slot[] wallSlots) {
+        for (Slot slot : wallSlots) {
+            if (slot != null) slot.submittedVersion = -1;
+        }
+    }
+
+    // Claims every tile slot for one job, or none of them if any is busy.
+    private static boolean acquire(Slot[] wallSlots) {
+        for (int i = 0; i < wallSlots.length; i++) {
+            if (wallSlots[i] != null && !wallSlots[i].inFlight.compareAndSet(false, true)) {
+                release(wallSlots, i);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void release(Slot[] wallSlots, int count) {
+        for (int i = 0; i < count; i++) {
+            if (wallSlots[i] != null) wallSlots[i].inFlight.set(false);
+        }
+    }
+
+    /**
+     * The most recently finished overlay of the map, or null if none has finished yet.
+     */
+    Composed latest(int mapId) {
+        Slot slot = slots.get(mapId);
+        return slot == null ? null : slot.published.get();
+    }
+
+    void clear() {
+        slots.clear();
+    }
+
+    void shutdown() {
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        slots.clear();
+    }
+
+    static final class Composed {
+        final int version;
+        final OverlayLayer layer;
+
+        Composed(int version, OverlayLayer layer) {
+            this.version = version;
+            this.layer = layer;
+        }
+    }
+
+    private static final class Slot {
+        final AtomicReference<Composed> published = new AtomicReference<>();
+        final AtomicBoolean inFlight = new AtomicBoolean();
+        // Written by the worker before inFlight is released, read by the main thread after acquiring it.
+        volatile OverlayLayer back = new OverlayLayer();
+        // Set by the main thread on submit; reset by the worker when its job fails, before inFlight is released.
+        volatile int submittedVersion = -1;
+    }
+}
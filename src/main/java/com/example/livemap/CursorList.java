@@ -0,0 +1,101 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.map.MapCursor;
+import org.bukkit.map.MapCursorCollection;
+
+import java.util.Arrays;
+
+/**
+ * The vanilla map cursors of one composed tile, used in native cursor mode. A cursor costs a few bytes in the
+ * map packet and is drawn by the client, where a pixel cursor dirties a region of the map image that is then
+ * resent. Kept in parallel arrays that are reused across compositions, like the {@link OverlayLayer} holding them.
+ */
+final class CursorList {
+
+    // Shapes for other players, picked by their cursor color; the white pointer is the viewer's own, as in vanilla.
+    private static final MapCursor.Type[] PLAYER_TYPES = {
+            MapCursor.Type.GREEN_POINTER, MapCursor.Type.RED_POINTER, MapCursor.Type.BLUE_POINTER
+    };
+    static final MapCursor.Type VIEWER_TYPE = MapCursor.Type.WHITE_POINTER;
+    static final MapCursor.Type CLUSTER_TYPE = MapCursor.Type.WHITE_CIRCLE;
+
+    private int size = 0;
+    private byte[] x = new byte[8];
+    private byte[] y = new byte[8];
+    private byte[] direction = new byte[8];
+    private MapCursor.Type[] types = new MapCursor.Type[8];
+    private String[] captions = new String[8];
+
+    static MapCursor.Type playerType(int colorIndex) {
+        return PLAYER_TYPES[colorIndex % PLAYER_TYPES.length];
+    }
+
+    /**
+     * Adds a cursor centered on a map pixel. Cursor coordinates run in half pixels from the map center,
+     * and the direction is the yaw in sixteenths of a turn, as for vanilla player markers.
+     *
+     * @param caption text shown under the cursor, or null for none
+     */
+    void add(int pixelX, int pixelY, float yaw, MapCursor.Type type, String caption) {
+        if (pixelX < 0 || pixelX >= OverlayLayer.SIZE || pixelY < 0 || pixelY >= OverlayLayer.SIZE) return;
+        if (size == types.length) grow();
+
+        x[size] = (byte) Math.min(127, pixelX * 2 - 128);
+        y[size] = (byte) Math.min(127, pixelY * 2 - 128);
+        direction[size] = (byte) Math.floorMod(Math.round(yaw * 16f / 360f), 16);
+        types[size] = type;
+        captions[size] = caption;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(captions, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Adds every cursor to the canvas cursors.
+     */
+    void addTo(MapCursorCollection cursors) {
+        for (int i = 0; i < size; i++) {
+            cursors.addCursor(new MapCursor(x[i], y[i], direction[i], types[i], true, captions[i]));
+        }
+    }
+
+    // Estimated bytes of these cursors in a map packet's cursor list.
+    int encodedBytes() {
+        int bytes = 0;
+        for (int i = 0; i < size; i++) {
+            bytes += MapPacketSize.cursor(captions[i]);
+        }
+        return bytes;
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        types = Arrays.copyOf(types, capacity);
+        captions = Arrays.copyOf(captions, capacity);
+    }
+}
@@ -0,0 +1,136 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.Arrays;
+
+/**
+ * Pre-rendered player cursor: a 9x9 diamond body plus a direction line and tip for each yaw bucket.
+ * Offsets are stored as interleaved (dx, dy) byte pairs relative to the cursor center.
+ * More buckets give smoother rotation at the cost of one small offset table per bucket.
+ */
+final class CursorStamps {
+
+    static final int MIN_BUCKETS = 4;
+    static final int MAX_BUCKETS = 360;
+
+    private static final int HALF_SIZE = 4;
+
+    private final int buckets;
+    private final byte[] body;
+    private final byte[][] direction;
+
+    CursorStamps(int buckets) {
+        this.buckets = Math.max(MIN_BUCKETS, Math.min(MAX_BUCKETS, buckets));
+        this.body = buildBody();
+        this.direction = new byte[this.buckets][];
+        for (int bucket = 0; bucket < this.buckets; bucket++) {
+            direction[bucket] = buildDirection(bucket * 360.0 / this.buckets);
+        }
+    }
+
+    int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Maps a yaw in degrees (any range) to its nearest bucket.
+     */
+    int bucketFor(float yaw) {
+        int bucket = Math.round(yaw * buckets / 360f) % buckets;
+        return bucket < 0 ? bucket + buckets : bucket;
+    }
+
+    // Diamond body offsets, identical for every yaw.
+    byte[] body() {
+        return body;
+    }
+
+    // Direction line and tip offsets for one bucket.
+    byte[] direction(int bucket) {
+        return direction[bucket];
+    }
+
+    private static byte[] buildBody() {
+        byte[] offsets = new byte[2 * (2 * HALF_SIZE * HALF_SIZE + 2 * HALF_SIZE + 1)];
+        int n = 0;
+        for (int x = -HALF_SIZE; x <= HALF_SIZE; x++) {
+            for (int y = -HALF_SIZE; y <= HALF_SIZE; y++) {
+                if (Math.abs(x) + Math.abs(y) <= HALF_SIZE) {
+                    offsets[n++] = (byte) x;
+                    offsets[n++] = (byte) y;
+                }
+            }
+        }
+        return Arrays.copyOf(offsets, n);
+    }
+
+    private static byte[] buildDirection(double yaw) {
+        double mapAngle = (yaw + 180) % 360;
+        double angleRad = Math.toRadians(mapAngle);
+
+        double cos = Math.cos(angleRad);
+        double sin = Math.sin(angleRad);
+
+        double px = 0.0;
+        double py = -HALF_SIZE;
+
+        int tipX = (int) Math.round(px * cos - py * sin);
+        int tipY = (int) Math.round(px * sin + py * cos);
+
+        // Bresenham line from the center to the tip, then a 2x2 block on the tip.
+        byte[] offsets = new byte[2 * (2 * HALF_SIZE + 2 + 4)];
+        int n = 0;
+
+        int x0 = 0;
+        int y0 = 0;
+        int dx = Math.abs(tipX);
+        int dy = Math.abs(tipY);
+        int sx = 0 < tipX ? 1 : -1;
+        int sy = 0 < tipY ? 1 : -1;
+        int err = dx - dy;
+        while (true) {
+            n = append(offsets, n, x0, y0);
+            if (x0 == tipX && y0 == tipY) break;
+            int e2 = 2 * err;
+            if (e2 > -dy) {
+                err -= dy;
+                x0 += sx;
+            }
+            if (e2 < dx) {
+                err += dx;
+                y0 += sy;
+            }
+        }
+
+        for (int y = tipY - 1; y < tipY + 1; y++) {
+            for (int x = tipX - 1; x < tipX + 1; x++) {
+                n = append(offsets, n, x, y);
+            }
+        }
+        return Arrays.copyOf(offsets, n);
+    }
+
+    // Appends an offset pair unless it is already in the table.
+    private static int append(byte[] offsets, int n, int x, int y) {
+        for (int i = 0; i < n; i += 2) {
+            if (offsets[i] == x && offsets[i + 1] == y) return n;
+        }
+        offsets[n] = (byte) x;
+        offsets[n + 1] = (byte) y;
+        return n + 2;
+    }
+}
@@ -0,0 +1,161 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.Location;
+import org.bukkit.entity.ItemFrame;
+import org.bukkit.map.MapView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Loaded item frames that hold a live map, keyed by frame, by map ID and by chunk.
+ * Kept current from hanging, interact and entity load/unload events so the refresh loop
+ * never has to sweep every entity in every world.
+ */
+final class FrameIndex {
+
+    private final Map<UUID, Entry> byFrame = new HashMap<>();
+    private final Map<Integer, Set<UUID>> byMap = new HashMap<>();
+    private final Map<UUID, Map<Long, Set<UUID>>> byChunk = new HashMap<>();
+
+    /**
+     * Records the frame as holding the given live map, replacing whatever it was indexed with before.
+     * A null view removes the frame from the index.
+     */
+    void update(ItemFrame frame, MapView view) {
+        remove(frame.getUniqueId());
+        if (view == null) return;
+
+        Location loc = frame.getLocation();
+        if (loc.getWorld() == null) return;
+
+        Entry entry = new Entry(frame, view, loc.getWorld().getUID(),
+                chunkKey(loc.getBlockX() >> 4, loc.getBlockZ() >> 4));
+        byFrame.put(frame.getUniqueId(), entry);
+        byMap.computeIfAbsent(view.getId(), id -> new HashSet<>()).add(frame.getUniqueId());
+        byChunk.computeIfAbsent(entry.worldId, w -> new HashMap<>())
+                .computeIfAbsent(entry.chunkKey, c -> new HashSet<>()).add(frame.getUniqueId());
+    }
+
+    void remove(UUID frameId) {
+        Entry entry = byFrame.remove(frameId);
+        if (entry == null) return;
+
+        removeFrom(byMap, entry.view.getId(), frameId);
+        Map<Long, Set<UUID>> chunks = byChunk.get(entry.worldId);
+        if (chunks != null) {
+            removeFrom(chunks, entry.chunkKey, frameId);
+            if (chunks.isEmpty()) byChunk.remove(entry.worldId);
+        }
+    }
+
+    void removeChunk(UUID worldId, int chunkX, int chunkZ) {
+        Map<Long, Set<UUID>> chunks = byChunk.get(worldId);
+        if (chunks == null) return;
+        Set<UUID> frames = chunks.get(chunkKey(chunkX, chunkZ));
+        if (frames == null) return;
+        for (UUID frameId : new ArrayList<>(frames)) {
+            remove(frameId);
+        }
+    }
+
+    void removeWorld(UUID worldId) {
+        Map<Long, Set<UUID>> chunks = byChunk.get(worldId);
+        if (chunks == null) return;
+        List<UUID> frames = new ArrayList<>();
+        for (Set<UUID> chunkFrames : chunks.values()) {
+            frames.addAll(chunkFrames);
+        }
+        for (UUID frameId : frames) {
+            remove(frameId);
+        }
+    }
+
+    void clear() {
+        byFrame.clear();
+        byMap.clear();
+        byChunk.clear();
+    }
+
+    int size() {
+        return byFrame.size();
+    }
+
+    Collection<Entry> entries() {
+        return Collections.unmodifiableCollection(byFrame.values());
+    }
+
+    /**
+     * Visits every chunk that holds indexed frames, with the map IDs those frames show.
+     */
+    void forEachChunk(ChunkVisitor visitor) {
+        for (Map.Entry<UUID, Map<Long, Set<UUID>>> world : byChunk.entrySet()) {
+            for (Map.Entry<Long, Set<UUID>> chunk : world.getValue().entrySet()) {
+                long key = chunk.getKey();
+                int[] mapIds = new int[chunk.getValue().size()];
+                int count = 0;
+                for (UUID frameId : chunk.getValue()) {
+                    mapIds[count++] = byFrame.get(frameId).view.getId();
+                }
+                visitor.visit(world.getKey(), (int) (key >> 32), (int) key, mapIds);
+            }
+        }
+    }
+
+    // Number of loaded frames currently showing the given map.
+    int frameCount(int mapId) {
+        Set<UUID> frames = byMap.get(mapId);
+        return frames == null ? 0 : frames.size();
+    }
+
+    private static <K> void removeFrom(Map<K, Set<UUID>> index, K key, UUID frameId) {
+        Set<UUID> frames = index.get(key);
+        if (frames == null) return;
+        frames.remove(frameId);
+        if (frames.isEmpty()) index.remove(key);
+    }
+
+    static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    interface ChunkVisitor {
+        void visit(UUID worldId, int chunkX, int chunkZ, int[] mapIds);
+    }
+
+    static final class Entry {
+        final ItemFrame frame;
+        final MapView view;
+        final UUID worldId;
+        final long chunkKey;
+
+        private Entry(ItemFrame frame, MapView view, UUID worldId, long chunkKey) {
+            this.frame = frame;
+            this.view = view;
+            this.worldId = worldId;
+            this.chunkKey = chunkKey;
+        }
+    }
+}
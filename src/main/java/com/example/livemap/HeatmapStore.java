@@ -0,0 +1,214 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Where players spend time on each live map: one 128x128 grid of ints per map, a cell per map pixel.
+ * Every snapshot adds the update interval to the cell under each player. Exponential decay is applied
+ * lazily: instead of shrinking every cell, new samples are weighted up by 2^(age / half-life) and the
+ * whole grid is rescaled only once that weight gets large. The palette image shown on the map is rebuilt
+ * only when enough was added, or enough has decayed, since it was last built. Main thread only.
+ */
+final class HeatmapStore {
+
+    static final int SIZE = 128;
+
+    // Cold to hot: dark water, water, light blue, lime, yellow, orange, red, bright red.
+    private static final byte[] RAMP = {48, 50, 70, 78, 74, 62, 114, 18};
+
+    // Samples are stored in 1/16 ticks so short intervals keep their precision after weighting.
+    private static final int FIXED_ONE = 16;
+
+    // Once samples weigh 2^12, the grid is divided by 2^12 and the weight starts over.
+    private static final int RESCALE_SHIFT = 12;
+
+    private final Map<Integer, Heat> maps = new HashMap<>();
+    private final IntConsumer onImageChanged;
+
+    private long halfLifeTicks;
+    private double saturationTicks;
+    private double changeThreshold;
+    private int[] nearbyPlayers = new int[0];
+
+    /**
+     * @param onImageChanged called with the map ID whenever a map's heatmap image was rebuilt
+     */
+    HeatmapStore(long halfLifeTicks, long saturationTicks, double changeThreshold, IntConsumer onImageChanged) {
+        this.onImageChanged = onImageChanged;
+        configure(halfLifeTicks, saturationTicks, changeThreshold);
+    }
+
+    void configure(long halfLifeTicks, long saturationTicks, double changeThreshold) {
+        this.halfLifeTicks = Math.max(20L, halfLifeTicks);
+        this.saturationTicks = Math.max(1L, saturationTicks);
+        this.changeThreshold = Math.min(1.0, Math.max(0.001, changeThreshold));
+    }
+
+    /**
+     * Adds the snapshot's players to the grids of the wall's maps, then rebuilds the image of any map
+     * whose grid moved past the change threshold.
+     *
+     * @param sampleTicks time each sample stands for, i.e. the snapshot interval
+     */
+    void update(MapWall wall, PlayerSnapshot snapshot, long tick, long sampleTicks) {
+        if (nearbyPlayers.length < snapshot.size()) {
+            nearbyPlayers = new int[snapshot.size()];
+        }
+
+        int count = wall.collect(snapshot, nearbyPlayers);
+        for (int i = 0; i < count; i++) {
+            int target = nearbyPlayers[i];
+            int wallX = wall.pixelX(snapshot.blockX(target));
+            int wallZ = wall.pixelZ(snapshot.blockZ(target));
+            if (!wall.hasTileAt(wallX, wallZ)) continue;
+
+            MapArea tile = wall.tileAt((wallZ >> 7) * wall.tilesWide + (wallX >> 7));
+            Heat heat = maps.computeIfAbsent(tile.mapId, id -> new Heat(tick));
+            heat.add((wallZ & 127) * SIZE + (wallX & 127), sampleTicks, tick);
+        }
+
+        for (int i = 0; i < wall.size(); i++) {
+            MapArea tile = wall.tileAt(i);
+            if (tile == null) continue;
+            Heat heat = maps.get(tile.mapId);
+            if (heat != null && heat.isStale(tick)) {
+                heat.rebuildImage(tick);
+                onImageChanged.accept(tile.mapId);
+            }
+        }
+    }
+
+    // The map's current heatmap image (0 where there is no heat), or null if nobody was ever on it.
+    byte[] image(int mapId) {
+        Heat heat = maps.get(mapId);
+        return heat == null ? null : heat.image;
+    }
+
+    // Bumped each time the map's image is rebuilt; 0 if it has none.
+    int revision(int mapId) {
+        Heat heat = maps.get(mapId);
+        return heat == null ? 0 : heat.revision;
+    }
+
+    int size() {
+        return maps.size();
+    }
+
+    // Stored heat of one map pixel, in the grid's current units; 0 if the map has none.
+    int cell(int mapId, int x, int z) {
+        Heat heat = maps.get(mapId);
+        return heat == null ? 0 : heat.cells[z * SIZE + x];
+    }
+
+    void clear() {
+        maps.clear();
+    }
+
+    /**
+     * Copies the heat pixels of an image over a base layer.
+     */
+    static void paint(byte[] image, byte[] target) {
+        for (int i = 0; i < image.length; i++) {
+            if (image[i] != 0) target[i] = image[i];
+        }
+    }
+
+    private final class Heat {
+        final int[] cells = new int[SIZE * SIZE];
+        byte[] image;
+        boolean imageEmpty = true;
+        int revision = 0;
+
+        // Tick at which a sample weighs exactly FIXED_ONE per tick.
+        long epochTick;
+
+        // Sum of all cells, and what was added since the image was built, both in stored units.
+        long mass = 0L;
+        long addedSinceImage = 0L;
+        long imageTick;
+
+        Heat(long tick) {
+            this.epochTick = tick;
+            this.imageTick = tick;
+        }
+
+        void add(int cell, long sampleTicks, long tick) {
+            long halfLives = (tick - epochTick) / halfLifeTicks;
+            if (halfLives >= RESCALE_SHIFT) {
+                rescale(halfLives);
+            }
+            double weight = weight(tick);
+            int amount = (int) Math.min(Integer.MAX_VALUE, Math.round(sampleTicks * FIXED_ONE * weight));
+            cells[cell] = (int) Math.min(Integer.MAX_VALUE, (long) cells[cell] + amount);
+            mass += amount;
+            addedSinceImage += amount;
+        }
+
+        // Applies every elapsed half-life at once: halves every cell that many times and moves the epoch
+        // forward to match, so new samples weigh less than 2 again however long the map sat idle.
+        private void rescale(long halfLives) {
+            int shift = (int) Math.min(halfLives, Integer.SIZE);
+            long total = 0L;
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = shift >= Integer.SIZE ? 0 : cells[i] >>> shift;
+                total += cells[i];
+            }
+            mass = total;
+            addedSinceImage = shift >= Integer.SIZE ? 0L : addedSinceImage >>> shift;
+            epochTick += halfLifeTicks * halfLives;
+        }
+
+        private double weight(long tick) {
+            return Math.pow(2.0, (double) (tick - epochTick) / halfLifeTicks);
+        }
+
+        // Enough new heat, or enough decay since the image was built, to change what it shows.
+        boolean isStale(long tick) {
+            if (image == null) return mass > 0;
+            if (addedSinceImage > changeThreshold * mass) return true;
+            // Once everything has faded out there is nothing left to decay.
+            if (imageEmpty) return false;
+            double decayed = 1.0 - Math.pow(2.0, -(double) (tick - imageTick) / halfLifeTicks);
+            return decayed > changeThreshold;
+        }
+
+        // Quantizes the decayed grid onto the ramp; a cell reaches the hottest color at saturationTicks.
+        // The lowest step stays transparent, so faded heat disappears instead of lingering in the coldest color.
+        void rebuildImage(long tick) {
+            double scale = 1.0 / (FIXED_ONE * weight(tick) * saturationTicks);
+            byte[] next = new byte[SIZE * SIZE];
+            boolean empty = true;
+            for (int i = 0; i < cells.length; i++) {
+                if (cells[i] == 0) continue;
+                double level = Math.sqrt(Math.min(1.0, cells[i] * scale));
+                int step = Math.min(RAMP.length, (int) (level * (RAMP.length + 1))) - 1;
+                if (step < 0) continue;
+                next[i] = RAMP[step];
+                empty = false;
+            }
+            image = next;
+            imageEmpty = empty;
+            revision++;
+            addedSinceImage = 0L;
+            imageTick = tick;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.map.MapFont;
+import org.bukkit.map.MinecraftFont;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of label text rasterized with the Minecraft map font.
+ * Renderers stamp the cached 1-bit mask instead of walking font sprites on every frame.
+ * Lookups are synchronized because overlays are composed on several worker threads.
+ */
+final class LabelCache {
+
+    // Y labels are looked up by value; this range covers the default overworld height.
+    private static final int MIN_NUMBER = -64;
+    private static final int MAX_NUMBER = 320;
+
+    // Cached result for text the map font cannot draw.
+    private static final Label INVALID = new Label(0, 0, 0, new long[0]);
+
+    private final Map<String, Label> entries;
+    private final Label[] numbers = new Label[MAX_NUMBER - MIN_NUMBER];
+
+    LabelCache(int capacity) {
+        int maxEntries = Math.max(1, capacity);
+        this.entries = new LinkedHashMap<String, Label>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Label> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the rasterized label for the given text, or null if the map font cannot draw it.
+     */
+    synchronized Label get(String text) {
+        Label label = entries.get(text);
+        if (label == null) {
+            label = MinecraftFont.Font.isValid(text) ? rasterize(text) : INVALID;
+            entries.put(text, label);
+        }
+        return label == INVALID ? null : label;
+    }
+
+    /**
+     * Returns the rasterized label for an integer, without building a string for common values.
+     */
+    synchronized Label getNumber(int value) {
+        if (value < MIN_NUMBER || value >= MAX_NUMBER) {
+            return get(String.valueOf(value));
+        }
+        Label label = numbers[value - MIN_NUMBER];
+        if (label == null) {
+            label = rasterize(String.valueOf(value));
+            numbers[value - MIN_NUMBER] = label;
+        }
+        return label;
+    }
+
+    synchronized void invalidate(String text) {
+        if (text != null) {
+            entries.remove(text);
+        }
+    }
+
+    private static Label rasterize(String text) {
+        int width = MinecraftFont.Font.getWidth(text);
+        int height = MinecraftFont.Font.getHeight();
+
+        // Glyphs are laid out exactly as the per-character drawing loop did: sprite width plus one pixel spacing.
+        int maskWidth = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (!MinecraftFont.Font.isValid(String.valueOf(ch))) continue;
+            maskWidth += MinecraftFont.Font.getChar(ch).getWidth() + 1;
+        }
+
+        long[] mask = new long[(maskWidth * height + 63) >>> 6];
+        int currentX = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (!MinecraftFont.Font.isValid(String.valueOf(ch))) continue;
+
+            MapFont.CharacterSprite sprite = MinecraftFont.Font.getChar(ch);
+            for (int row = 0; row < sprite.getHeight() && row < height; row++) {
+                for (int col = 0; col < sprite.getWidth(); col++) {
+                    if (sprite.get(row, col)) {
+                        int bit = row * maskWidth + currentX + col;
+                        mask[bit >>> 6] |= 1L << bit;
+                    }
+                }
+            }
+            currentX += sprite.getWidth() + 1;
+        }
+        return new Label(width, height, maskWidth, mask);
+    }
+
+    /**
+     * A rasterized label. {@code width} and {@code height} are the font metrics used for layout;
+     * the mask is {@code maskWidth} pixels wide, row-major, one bit per pixel.
+     */
+    static final class Label {
+        final int width;
+        final int height;
+        final int maskWidth;
+        final long[] mask;
+
+        private Label(int width, int height, int maskWidth, long[] mask) {
+            this.width = width;
+            this.height = height;
+            this.maskWidth = maskWidth;
+            this.mask = mask;
+        }
+    }
+}
@@ -27,8 +27,18 @@ import org.bukkit.entity.Entity;
 import org.bukkit.entity.ItemFrame;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.hanging.HangingBreakEvent;
+import org.bukkit.event.hanging.HangingPlaceEvent;
 import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.player.PlayerInteractEntityEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.MapInitializeEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
@@ -37,17 +47,21 @@ import org.bukkit.map.*;
 import org.bukkit.NamespacedKey;
 import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.potion.PotionEffectType;
+import org.bukkit.scheduler.BukkitTask;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 import java.util.UUID;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 
 // The main plugin class
@@ -57,18 +71,42 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
     // Scale.values()[0] is the max zoom (1:1, 128x128 blocks).
     private final MapView.Scale CREATION_SCALE = MapView.Scale.values()[0];
 
-    // The interval at which we force map updates globally for Item Frames.
-    private static final long FORCED_RENDER_INTERVAL_TICKS = 20L;
-
     private long cacheUpdateIntervalTicks = 5L;
     private boolean showPlayerNames = true;
     private boolean showYLevel = false;
     private boolean showItemFrameNameplate = false;
-    private int mapCreationCounter = 0;
+    private boolean showTrails = false;
+    private int trailLength = 40;
+    private int trailPixelsPerMap = 1024;
+    private int clusterRadiusPixels = 6;
+    private boolean declutterLabels = true;
+    private boolean showHeatmap = false;
+    private int heatmapHalfLifeSeconds = 600;
+    private int heatmapSaturationSeconds = 60;
+    private double heatmapChangeThreshold = 0.05;
+    private int labelCacheSize = 256;
+    private int cursorYawBuckets = 64;
+    private int compositionThreads = 0;
+    private int prerenderChunkLoads = 8;
+    private int prerenderThreads = 1;
+    private boolean contextualRendering = false;
+    private boolean nativeCursors = false;
+    private int mapBandwidthPerPlayerKb = 0;
+    private boolean deferSharedMaps = false;
+    private int mapViewRange = 64;
+    private int mapRefreshMinTicks = 5;
+    private int mapRefreshMaxTicks = 40;
+    private double tickBudgetMillis = 2.0;
+    private int metricsDumpIntervalSeconds = 60;
+
+    // IDs of the maps LiveMaps created or adopted; only these get a renderer.
+    private MapRegistry mapRegistry;
+
+    // Loaded item frames holding a registered live map, maintained from entity events.
+    private final FrameIndex frameIndex = new FrameIndex();
 
     private NamespacedKey locationKey;
     private NamespacedKey gridTargetKey;
-    private NamespacedKey confirmKey;
     private NamespacedKey storedNameKey;        // Key to store Item Frame ENTITY name
     private NamespacedKey storedMapItemNameKey; // Key to store MAP ITEM's display name
     private NamespacedKey scaleSelectionKey;    // Key to store the selected scale
@@ -76,8 +114,61 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
     // Map to store the last selected scale per player for session persistence
     private final Map<UUID, MapView.Scale> lastSelectedScale = new HashMap<>();
 
-    private final Set<UUID> playersPendingConfirmation = new HashSet<>();
-    private final Set<String> generatedMapCoordinates = new HashSet<>();
+
+    // Generated maps by world, center and scale, plus the "Live Map #N" counter. Persisted.
+    private MapCoordinateIndex mapIndex;
+
+    // Map palette colors used for player cursors, picked by a hash of the player's UUID.
+    private static final byte[] PLAYER_COLOR_IDS = new byte[] {
+        34, 58, 86, 98, 114, 126, 78, 90, 102, 110, 66, 74
+    };
+
+    // Per-map version stamps, recomputed from each published snapshot.
+    private final MapChangeTracker mapChanges = new MapChangeTracker();
+
+    // Maps someone is close enough to see; everything else is skipped.
+    private final MapActivation mapActivation = new MapActivation(64);
+
+    // Per-map refresh intervals between map-refresh-min-ticks and map-refresh-max-ticks.
+    private final RefreshScheduler refreshScheduler = new RefreshScheduler(5, 40);
+    private BukkitTask refreshTask;
+
+    // Spreads refresh, composition and frame maintenance over ticks under tick-budget-ms.
+    private final TickScheduler tickScheduler = new TickScheduler(this, 2.0);
+
+    // Subsystem timings and counters for /livemap stats and the metrics.jsonl dump.
+    private final PerformanceMetrics metrics = new PerformanceMetrics();
+
+    // Estimated map bytes per player, and the map-bandwidth-per-player-kb budget.
+    private final BandwidthBudget bandwidth = new BandwidthBudget(0);
+
+    // Recent player positions, recorded from each snapshot while trails are shown.
+    private TrailHistory trails = new TrailHistory(40);
+    private TrailHistory.Frame trailFrame;
+
+    // Per-map activity grids, drawn under the overlay together with the base layer while the heatmap is shown.
+    private final HeatmapStore heatmaps = new HeatmapStore(600 * 20L, 60 * 20L, 0.05, this::onHeatmapChanged);
+    private int metricsDumpSeconds = 0;
+
+    // Player positions shared by every renderer, recaptured every cacheUpdateIntervalTicks.
+    private final PositionCache positionCache = new PositionCache(PLAYER_COLOR_IDS.length, this::onSnapshotPublished);
+
+    // Worker pool that composes map overlays; renderers only copy the finished layers.
+    private CompositionPipeline composition;
+
+    // Pre-rendered terrain under the overlay, filled by the terrain renderer and kept on disk.
+    private BaseLayerStore baseLayers;
+    private TerrainRenderer terrainRenderer;
+    private TerrainPyramid terrainPyramid;
+
+    // Display settings of the latest composition, reused for the per-viewer deltas.
+    private OverlayComposer currentComposer;
+
+    // Pre-rasterized name and Y-level labels, rebuilt when the configured size changes.
+    private LabelCache labelCache = new LabelCache(labelCacheSize);
+
+    // Cursor body and direction offsets, pre-rendered for each yaw bucket.
+    private CursorStamps cursorStamps = new CursorStamps(cursorYawBuckets);
 
     // --- Dynamic Scale Utilities ---
 
@@ -115,9 +206,21 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         saveDefaultConfig();
         loadConfigSettings();
 
+        this.mapIndex = new MapCoordinateIndex(this, new File(getDataFolder(), "map-index.dat"));
+        mapIndex.load();
+
+        this.baseLayers = new BaseLayerStore(new File(getDataFolder(), "base-layers.dat"),
+                new File(getDataFolder(), "base-layers.idx"), getLogger());
+        baseLayers.open();
+        this.terrainPyramid = new TerrainPyramid(mapIndex, baseLayers);
+
+        this.mapRegistry = new MapRegistry(new File(getDataFolder(), "live-maps.dat"), getLogger());
+        if (!mapRegistry.load()) {
+            migrateLegacyMaps();
+        }
+
         this.locationKey = new NamespacedKey(this, "livemap-locate-target");
         this.gridTargetKey = new NamespacedKey(this, "map-grid-target");
-        this.confirmKey = new NamespacedKey(this, "map-generation-confirm");
         this.storedNameKey = new NamespacedKey(this, "livemap-stored-name");
         this.storedMapItemNameKey = new NamespacedKey(this, "livemap-stored-map-name");
         this.scaleSelectionKey = new NamespacedKey(this, "map-scale-select");
@@ -131,11 +234,17 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         }
         // --------------------------------------------------------
 
-        getLogger().info("LiveMaps enabled. Initializing existing live maps...");
+        getLogger().info("LiveMaps enabled. Initializing " + mapRegistry.size() + " registered live maps...");
         reinitializeMaps();
+        rebuildFrameIndex();
 
         applyItemFrameNameplateVisibility(this.showItemFrameNameplate);
 
+        // 0 means automatic: half the cores, leaving the rest to the server.
+        int threads = compositionThreads > 0 ? compositionThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.composition = new CompositionPipeline(threads, getLogger(), metrics);
+        this.terrainRenderer = new TerrainRenderer(this, baseLayers, prerenderThreads, prerenderChunkLoads, this::onBaseLayerRendered);
+
         getLogger().info("Starting recurring map update task.");
         startUpdateTask();
     }
@@ -145,35 +254,273 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         this.showPlayerNames = getConfig().getBoolean("show-player-names", true);
         this.showYLevel = getConfig().getBoolean("show-y-level", false);
         this.showItemFrameNameplate = getConfig().getBoolean("show-item-frame-nameplate", false);
-        reinitializeMaps();
+        this.showTrails = getConfig().getBoolean("show-trails", false);
+        this.trailLength = getConfig().getInt("trail-length", 40);
+        if (this.trails.getLength() != Math.max(2, this.trailLength)) {
+            this.trails = new TrailHistory(this.trailLength);
+            this.trailFrame = null;
+        }
+        this.trailPixelsPerMap = getConfig().getInt("trail-max-pixels-per-map", 1024);
+        this.clusterRadiusPixels = Math.max(0, getConfig().getInt("cluster-radius-pixels", 6));
+        this.declutterLabels = getConfig().getBoolean("declutter-labels", true);
+        this.showHeatmap = getConfig().getBoolean("show-heatmap", false);
+        this.heatmapHalfLifeSeconds = getConfig().getInt("heatmap-half-life-seconds", 600);
+        this.heatmapSaturationSeconds = getConfig().getInt("heatmap-saturation-seconds", 60);
+        this.heatmapChangeThreshold = getConfig().getDouble("heatmap-change-threshold", 0.05);
+        this.heatmaps.configure(this.heatmapHalfLifeSeconds * 20L, this.heatmapSaturationSeconds * 20L, this.heatmapChangeThreshold);
+        this.labelCacheSize = getConfig().getInt("label-cache-size", 256);
+        this.labelCache = new LabelCache(this.labelCacheSize);
+        this.cursorYawBuckets = getConfig().getInt("cursor-yaw-buckets", 64);
+        if (this.cursorStamps.getBuckets() != this.cursorYawBuckets) {
+            this.cursorStamps = new CursorStamps(this.cursorYawBuckets);
+        }
+        this.compositionThreads = getConfig().getInt("composition-threads", 0);
+        this.prerenderChunkLoads = getConfig().getInt("prerender-concurrent-chunk-loads", 8);
+        this.prerenderThreads = getConfig().getInt("prerender-threads", 1);
+        this.contextualRendering = getConfig().getBoolean("contextual-rendering", false);
+        String cursorMode = getConfig().getString("cursor-mode", "pixels");
+        this.nativeCursors = "native".equalsIgnoreCase(cursorMode);
+        if (!this.nativeCursors && !"pixels".equalsIgnoreCase(cursorMode)) {
+            getLogger().warning("Unknown cursor-mode '" + cursorMode + "', using 'pixels'.");
+        }
+        this.mapBandwidthPerPlayerKb = getConfig().getInt("map-bandwidth-per-player-kb", 0);
+        this.bandwidth.configure(this.mapBandwidthPerPlayerKb * 1024L);
+        this.deferSharedMaps = getConfig().getBoolean("defer-shared-maps", false);
+        this.mapViewRange = getConfig().getInt("map-view-range", 64);
+        this.mapActivation.setViewRange(this.mapViewRange);
+        this.mapRefreshMinTicks = getConfig().getInt("map-refresh-min-ticks", 5);
+        this.mapRefreshMaxTicks = getConfig().getInt("map-refresh-max-ticks", 40);
+        this.refreshScheduler.configure(this.mapRefreshMinTicks, this.mapRefreshMaxTicks);
+        this.tickBudgetMillis = getConfig().getDouble("tick-budget-ms", 2.0);
+        this.tickScheduler.setBudgetMillis(this.tickBudgetMillis);
+        this.metricsDumpIntervalSeconds = getConfig().getInt("metrics-dump-interval-seconds", 60);
+        if (this.terrainRenderer != null) {
+            this.terrainRenderer.setMaxConcurrentLoads(this.prerenderChunkLoads);
+        }
+    }
+
+    // --- OVERLAY COMPOSITION ---
+
+    private void onSnapshotPublished(PlayerSnapshot snapshot) {
+        long tick = Bukkit.getCurrentTick();
+        mapActivation.update(snapshot, frameIndex, liveMapHolders());
+        refreshScheduler.observe(snapshot, tick);
+        trailFrame = showTrails ? trails.record(snapshot) : null;
+        if (showHeatmap) {
+            // Heat is gathered on every wall, watched or not, so a map shows its history once someone looks.
+            for (MapWall wall : mapChanges.walls()) {
+                heatmaps.update(wall, snapshot, tick, positionCache.getIntervalTicks());
+            }
+        }
+        mapChanges.update(snapshot, cursorStamps, showYLevel, trailFrame, wall -> {
+            if (!mapActivation.isActive(wall) || !refreshScheduler.isDue(wall, tick)) return false;
+            refreshScheduler.updated(wall, snapshot, mapActivation, tick);
+            return true;
+        });
+        composeChangedMaps(snapshot);
     }
 
     /**
-     * Ensure we only remove OUR renderer before adding a new one.
+     * Queues every active map wall for composition on the worker pool; the hand-off itself runs in a tick
+     * scheduler slice, and a wall still waiting for its slice just gets the newer versions.
+     * Map areas and display settings are copied here, on the main thread, so workers never touch Bukkit.
+     */
+    private void composeChangedMaps(PlayerSnapshot snapshot) {
+        if (composition == null) return;
+
+        OverlayComposer composer = new OverlayComposer(PLAYER_COLOR_IDS, labelCache, cursorStamps, showPlayerNames, showYLevel,
+                showTrails ? trailFrame : null, trailPixelsPerMap, clusterRadiusPixels, declutterLabels, nativeCursors);
+        this.currentComposer = composer;
+        mapChanges.forEachWall((wall, versions) -> {
+            if (mapActivation.isActive(wall)) {
+                tickScheduler.offer(TickScheduler.Lane.COMPOSE, wall, () -> {
+                    if (composition != null) composition.submit(wall, versions, snapshot, composer);
+                });
+            }
+        });
+    }
+
+    // A rebuilt heatmap image is drawn with the base layer; bumping the version gets the map resent.
+    private void onHeatmapChanged(int mapId) {
+        mapChanges.invalidate(mapId);
+    }
+
+    // The players holding each live map in a main or off hand.
+    private Map<Integer, List<UUID>> liveMapHolders() {
+        Map<Integer, List<UUID>> holders = new HashMap<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            MapView main = getLiveMapView(player.getInventory().getItemInMainHand());
+            if (main != null) holders.computeIfAbsent(main.getId(), id -> new ArrayList<>()).add(player.getUniqueId());
+            MapView off = getLiveMapView(player.getInventory().getItemInOffHand());
+            if (off != null && (main == null || off.getId() != main.getId())) {
+                holders.computeIfAbsent(off.getId(), id -> new ArrayList<>()).add(player.getUniqueId());
+            }
+        }
+        return holders;
+    }
+
+    /**
+     * True if an update of the map has to wait because one of its viewers is over their bandwidth budget.
+     * Maps in someone's hand are never held back; a contextual canvas only answers to its own viewer.
+     * A shared canvas goes to every viewer at once, so it only waits when defer-shared-maps is on.
+     * Tiles further from a viewer wait first, see {@link BandwidthBudget#mustWait}.
+     */
+    private boolean isUpdateDeferred(int mapId, Player contextualViewer, boolean pending) {
+        if (!bandwidth.isLimited() || mapActivation.isHeld(mapId)) return false;
+        if (contextualViewer == null && !deferSharedMaps) return false;
+        long now = System.nanoTime();
+        UUID[] viewers;
+        boolean waits;
+        if (contextualViewer != null) {
+            UUID viewerId = contextualViewer.getUniqueId();
+            viewers = new UUID[] { viewerId };
+            waits = bandwidth.mustWait(viewerId, mapActivation.closeness(mapId, viewerId), now);
+        } else {
+            viewers = mapActivation.viewerIds(mapId);
+            waits = bandwidth.anyMustWait(viewers, mapActivation.closeness(mapId), now);
+        }
+        if (!waits) return false;
+        if (pending) {
+            bandwidth.deferred(viewers, now);
+            metrics.add(PerformanceMetrics.Counter.UPDATES_DEFERRED, 1);
+        }
+        return true;
+    }
+
+    /**
+     * Recomposes one viewer's delta on a map (players only they may see, plus their own highlighted cursor)
+     * when a new snapshot or new display settings arrived. Returns true if the delta looks different.
+     * The visibility policy itself was already evaluated once, when the snapshot was captured.
+     */
+    private boolean composeViewerDelta(int mapId, Player viewer, ViewerCanvas state) {
+        PlayerSnapshot snapshot = positionCache.get();
+        OverlayComposer composer = this.currentComposer;
+        if (snapshot == state.deltaSnapshot && composer == state.deltaComposer) return false;
+        boolean settingsChanged = composer != state.deltaComposer;
+        state.deltaSnapshot = snapshot;
+        state.deltaComposer = composer;
+
+        MapWall wall = mapChanges.wallOf(mapId);
+        if (wall == null || composer == null) {
+            boolean hadDelta = !state.delta.isEmpty() || state.delta.cursors.size() > 0;
+            state.delta.clear();
+            state.deltaSignature = 0L;
+            return hadDelta;
+        }
+
+        long signature = composer.composeViewer(snapshot, wall, snapshot.extrasFor(viewer.getUniqueId()),
+                snapshot.indexOf(viewer.getUniqueId()), state.deltaCanvas(wall, mapChanges.tileIndexOf(mapId)));
+        boolean changed = settingsChanged || signature != state.deltaSignature;
+        state.deltaSignature = signature;
+        return changed;
+    }
+
+    // Redraws a map whose terrain just changed, and the zoomed-out maps derived from it.
+    private void onBaseLayerRendered(int mapId) {
+        mapChanges.invalidate(mapId);
+        MapView view = Bukkit.getMap(mapId);
+        MapArea area = view == null ? null : MapArea.of(view);
+        if (area != null) {
+            for (int parentId : terrainPyramid.propagate(area)) {
+                mapChanges.invalidate(parentId);
+            }
+        }
+        composeChangedMaps(positionCache.get());
+    }
+
+    /**
+     * Gives a map without terrain its base layer: derived at once from finer cached maps where they
+     * cover it, otherwise pre-rendered from chunks in the background.
+     */
+    private void prepareTerrain(MapView view, Player player) {
+        MapArea area = MapArea.of(view);
+        if (area == null || baseLayers.contains(view.getId())) return;
+
+        byte[] layer = new byte[BaseLayerStore.SLOT_SIZE];
+        int missingTiles = terrainPyramid.derive(area, layer);
+        if (missingTiles >= 0) {
+            baseLayers.put(view.getId(), layer);
+            onBaseLayerRendered(view.getId());
+        }
+        if (missingTiles == 0) {
+            if (player != null) player.sendMessage(ChatColor.GREEN + "Map #" + view.getId() + " rendered instantly from cached finer maps.");
+            return;
+        }
+
+        if (terrainRenderer.render(view, player) && player != null) {
+            player.sendMessage(ChatColor.AQUA + "Rendering the terrain of map #" + view.getId() + " at scale "
+                    + view.getScale().ordinal() + " in the background.");
+        }
+    }
+
+    // Re-renders every map after a display setting changed, without waiting for the next snapshot.
+    private void invalidateAllMaps() {
+        mapChanges.invalidateAll();
+        composeChangedMaps(positionCache.get());
+    }
+
+    /**
+     * Re-attaches renderers to the registered live maps only.
+     * Maps that are not loaded yet are picked up by onMapInitialize when the server loads them.
      */
     private void reinitializeMaps() {
+        long started = System.nanoTime();
         int count = 0;
-        for (short id = 0; id < 32000; id++) {
+        for (int id : mapRegistry.toArray()) {
             MapView view = Bukkit.getMap(id);
             if (view != null) {
-                List<MapRenderer> toRemove = new ArrayList<>();
-                for (MapRenderer renderer : view.getRenderers()) {
-                    if (renderer instanceof PlayerTrackerRenderer) {
-                        toRemove.add(renderer);
-                    }
-                }
-
-                for (MapRenderer renderer : toRemove) {
-                    view.removeRenderer(renderer);
-                }
-
-                view.addRenderer(new PlayerTrackerRenderer(this));
+                attachRenderer(view);
                 count++;
             }
         }
         if (count > 0) {
             getLogger().info("Successfully reinitialized renderers on " + count + " MapViews.");
         }
+        metrics.recordSince(PerformanceMetrics.Timer.REINITIALIZE, started);
+    }
+
+    /**
+     * Ensure we only remove OUR renderer before adding a new one.
+     */
+    private void attachRenderer(MapView view) {
+        List<MapRenderer> toRemove = new ArrayList<>();
+        for (MapRenderer renderer : view.getRenderers()) {
+            if (renderer instanceof PlayerTrackerRenderer) {
+                toRemove.add(renderer);
+            }
+        }
+
+        for (MapRenderer renderer : toRemove) {
+            view.removeRenderer(renderer);
+        }
+
+        view.addRenderer(new PlayerTrackerRenderer(this, contextualRendering));
+        mapChanges.track(view);
+    }
+
+    /**
+     * One-time migration for servers upgrading from a version without the registry.
+     * LiveMaps always turns position tracking off on its maps, so those are adopted;
+     * maps players are still carrying around keep tracking on and are left alone.
+     */
+    private void migrateLegacyMaps() {
+        List<Integer> legacyIds = new ArrayList<>();
+        for (short id = 0; id < 32000; id++) {
+            MapView view = Bukkit.getMap(id);
+            if (view != null && !view.isTrackingPosition()) {
+                legacyIds.add(view.getId());
+            }
+        }
+        int adopted = mapRegistry.addAll(legacyIds.stream().mapToInt(Integer::intValue).toArray());
+        getLogger().info("Created the live map registry and adopted " + adopted + " existing maps.");
+    }
+
+    @EventHandler
+    public void onMapInitialize(MapInitializeEvent event) {
+        MapView view = event.getMap();
+        if (mapRegistry != null && mapRegistry.contains(view.getId())) {
+            attachRenderer(view);
+        }
     }
 
     @Override
@@ -183,53 +530,257 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         getConfig().addDefault("show-player-names", true);
         getConfig().addDefault("show-y-level", false);
         getConfig().addDefault("show-item-frame-nameplate", false);
+        getConfig().addDefault("show-trails", false);
+        getConfig().addDefault("trail-length", 40);
+        getConfig().addDefault("trail-max-pixels-per-map", 1024);
+        getConfig().addDefault("cluster-radius-pixels", 6);
+        getConfig().addDefault("declutter-labels", true);
+        getConfig().addDefault("show-heatmap", false);
+        getConfig().addDefault("heatmap-half-life-seconds", 600);
+        getConfig().addDefault("heatmap-saturation-seconds", 60);
+        getConfig().addDefault("heatmap-change-threshold", 0.05);
+        getConfig().addDefault("label-cache-size", 256);
+        getConfig().addDefault("cursor-yaw-buckets", 64);
+        getConfig().addDefault("composition-threads", 0);
+        getConfig().addDefault("prerender-concurrent-chunk-loads", 8);
+        getConfig().addDefault("prerender-threads", 1);
+        getConfig().addDefault("contextual-rendering", false);
+        getConfig().addDefault("cursor-mode", "pixels");
+        getConfig().addDefault("map-bandwidth-per-player-kb", 0);
+        getConfig().addDefault("defer-shared-maps", false);
+        getConfig().addDefault("map-view-range", 64);
+        getConfig().addDefault("map-refresh-min-ticks", 5);
+        getConfig().addDefault("map-refresh-max-ticks", 40);
+        getConfig().addDefault("tick-budget-ms", 2.0);
+        getConfig().addDefault("metrics-dump-interval-seconds", 60);
         super.saveDefaultConfig();
     }
 
     @Override
     public void onDisable() {
         Bukkit.getScheduler().cancelTasks(this);
-        playersPendingConfirmation.clear();
         lastSelectedScale.clear(); // Clear session data
         getLogger().info("LiveMaps disabled.");
-        generatedMapCoordinates.clear();
-        mapCreationCounter = 0;
+        if (mapIndex != null) {
+            mapIndex.saveNow();
+        }
+        frameIndex.clear();
+        mapChanges.clear();
+        cursorListBytes.clear();
+        bandwidth.clear();
+        refreshScheduler.clear();
+        refreshTask = null;
+        tickScheduler.stop();
+        positionCache.stop();
+        positionCache.clear();
+        if (composition != null) {
+            composition.shutdown();
+            composition = null;
+        }
+        if (terrainRenderer != null) {
+            terrainRenderer.shutdown();
+            terrainRenderer = null;
+        }
+        if (baseLayers != null) {
+            baseLayers.close();
+        }
     }
 
     private void startUpdateTask() {
-        Bukkit.getScheduler().runTaskTimer(this, this::startImmediateMapUpdate, 0L, FORCED_RENDER_INTERVAL_TICKS);
+        positionCache.start(this, cacheUpdateIntervalTicks);
+        tickScheduler.start();
+        startRefreshTask();
+        Bukkit.getScheduler().runTaskTimer(this, this::sampleMetrics, 20L, 20L);
     }
 
+    // --- METRICS ---
+
+    // Runs once a second: updates the per-second rates and appends a line to metrics.jsonl when a dump is due.
+    private void sampleMetrics() {
+        long now = System.nanoTime();
+        // Cursor lists are resent to every viewer a few times a second, whether they changed or not.
+        long cursorBytes = 0;
+        for (Map.Entry<Integer, Integer> entry : cursorListBytes.entrySet()) {
+            UUID[] viewers = mapActivation.viewerIds(entry.getKey());
+            long bytes = (long) entry.getValue() * MapPacketSize.CURSOR_RESENDS_PER_SECOND;
+            cursorBytes += bytes * viewers.length;
+            bandwidth.charge(viewers, bytes, now);
+        }
+        metrics.add(PerformanceMetrics.Counter.CURSOR_BYTES, cursorBytes);
+
+        metrics.sample(now);
+        bandwidth.sample(now);
+        if (metricsDumpIntervalSeconds <= 0) return;
+        if (++metricsDumpSeconds < metricsDumpIntervalSeconds) return;
+        metricsDumpSeconds = 0;
+
+        String line = metrics.toJson(System.currentTimeMillis()) + "\n";
+        File file = new File(getDataFolder(), "metrics.jsonl");
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            try {
+                Files.write(file.toPath(), line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                getLogger().warning("Failed to write " + file.getName() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // The refresh loop runs at the shortest per-map interval; maps that are not due have no changes to send.
+    private void startRefreshTask() {
+        if (refreshTask != null) refreshTask.cancel();
+        refreshTask = Bukkit.getScheduler().runTaskTimer(this, this::startImmediateMapUpdate, 0L, refreshScheduler.getMinTicks());
+    }
+
+    /**
+     * Starts a refresh pass and queues a resend for every held map and every frame of a changed map.
+     * The resends themselves run in tick scheduler slices, so a large wall does not land in one tick.
+     */
     private void startImmediateMapUpdate() {
+        long started = System.nanoTime();
         for (Player player : Bukkit.getOnlinePlayers()) {
-            ItemStack item = player.getInventory().getItemInMainHand();
-            if (item.getType() == Material.FILLED_MAP && item.getItemMeta() instanceof MapMeta) {
-                player.getInventory().setItemInMainHand(item);
+            UUID playerId = player.getUniqueId();
+            tickScheduler.offer(TickScheduler.Lane.REFRESH, playerId, () -> refreshHeldMap(playerId));
+        }
+
+        mapChanges.beginRefreshPass();
+
+        List<UUID> staleFrames = null;
+        for (FrameIndex.Entry entry : frameIndex.entries()) {
+            ItemFrame frame = entry.frame;
+            if (!frame.isValid()) {
+                // Removed without an event we listen to (e.g. killed by a command).
+                if (staleFrames == null) staleFrames = new ArrayList<>();
+                staleFrames.add(frame.getUniqueId());
+                continue;
+            }
+
+            MapView view = entry.view;
+            if (!mapActivation.isActive(view.getId()) || !mapChanges.isInRefreshPass(view.getId())) continue;
+            // A forced resend is extra traffic on top of the regular updates, so it is skipped while anyone who
+            // would receive it is over budget, shared canvas or not.
+            UUID[] viewers = mapActivation.viewerIds(view.getId());
+            if (bandwidth.anyOverBudget(viewers, started)) {
+                bandwidth.deferred(viewers, started);
+                metrics.add(PerformanceMetrics.Counter.UPDATES_DEFERRED, 1);
+                continue;
             }
+            tickScheduler.offer(TickScheduler.Lane.REFRESH, frame.getUniqueId(), () -> refreshFrame(frame, view));
         }
 
+        if (staleFrames != null) {
+            for (UUID frameId : staleFrames) {
+                frameIndex.remove(frameId);
+            }
+        }
+        metrics.recordSince(PerformanceMetrics.Timer.REFRESH_SWEEP, started);
+    }
+
+    private void refreshHeldMap(UUID playerId) {
+        Player player = Bukkit.getPlayer(playerId);
+        if (player == null) return;
+        ItemStack item = player.getInventory().getItemInMainHand();
+        if (item.getType() == Material.FILLED_MAP && item.getItemMeta() instanceof MapMeta) {
+            player.getInventory().setItemInMainHand(item);
+        }
+    }
+
+    private void refreshFrame(ItemFrame frame, MapView view) {
+        if (!frame.isValid()) return;
+
+        view.setTrackingPosition(true);
+        view.setTrackingPosition(false);
+
+        if (frame.getRotation() != null) {
+            frame.setRotation(frame.getRotation());
+        }
+    }
+
+    // --- ITEM FRAME INDEX ---
+
+    /**
+     * Returns the map view of a filled map item if it is a registered live map, otherwise null.
+     */
+    private MapView getLiveMapView(ItemStack item) {
+        if (item == null || item.getType() != Material.FILLED_MAP || !(item.getItemMeta() instanceof MapMeta)) return null;
+        MapMeta meta = (MapMeta) item.getItemMeta();
+        if (!meta.hasMapView()) return null;
+        MapView view = meta.getMapView();
+        return (view != null && mapRegistry.contains(view.getId())) ? view : null;
+    }
+
+    private void indexFrame(ItemFrame frame) {
+        if (frame.isValid()) {
+            frameIndex.update(frame, getLiveMapView(frame.getItem()));
+        } else {
+            frameIndex.remove(frame.getUniqueId());
+        }
+    }
+
+    /**
+     * Full rebuild from the loaded entities. Only used at startup and on /livemap refresh;
+     * events keep the index current in between.
+     */
+    private void rebuildFrameIndex() {
+        frameIndex.clear();
         for (World world : Bukkit.getWorlds()) {
-            for (Entity entity : world.getEntities()) {
-                if (entity instanceof ItemFrame) {
-                    ItemFrame frame = (ItemFrame) entity;
-                    ItemStack mapItem = frame.getItem();
-                    if (mapItem.getType() == Material.FILLED_MAP && mapItem.getItemMeta() instanceof MapMeta) {
-                        MapMeta meta = (MapMeta) mapItem.getItemMeta();
-                        if (meta.hasMapView()) {
-                            MapView view = meta.getMapView();
-                            view.setTrackingPosition(true);
-                            view.setTrackingPosition(false);
-
-                            if (frame.getRotation() != null) {
-                                frame.setRotation(frame.getRotation());
-                            }
-                        }
-                    }
-                }
+            for (ItemFrame frame : world.getEntitiesByClass(ItemFrame.class)) {
+                indexFrame(frame);
+            }
+        }
+    }
+
+    // The frame's item changes after these events fire, so it is re-read on the next tick.
+    private void reindexFrameNextTick(ItemFrame frame) {
+        Bukkit.getScheduler().runTask(this, () -> indexFrame(frame));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onHangingPlace(HangingPlaceEvent event) {
+        if (event.getEntity() instanceof ItemFrame) {
+            reindexFrameNextTick((ItemFrame) event.getEntity());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onHangingBreak(HangingBreakEvent event) {
+        if (event.getEntity() instanceof ItemFrame) {
+            frameIndex.remove(event.getEntity().getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onFrameInteract(PlayerInteractEntityEvent event) {
+        if (event.getRightClicked() instanceof ItemFrame) {
+            reindexFrameNextTick((ItemFrame) event.getRightClicked());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onFrameDamage(EntityDamageByEntityEvent event) {
+        if (event.getEntity() instanceof ItemFrame) {
+            reindexFrameNextTick((ItemFrame) event.getEntity());
+        }
+    }
+
+    @EventHandler
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            if (entity instanceof ItemFrame) {
+                indexFrame((ItemFrame) entity);
             }
         }
     }
 
+    @EventHandler
+    public void onEntitiesUnload(EntitiesUnloadEvent event) {
+        frameIndex.removeChunk(event.getWorld().getUID(), event.getChunk().getX(), event.getChunk().getZ());
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        frameIndex.removeWorld(event.getWorld().getUID());
+    }
+
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
         if (!command.getName().equalsIgnoreCase("livemap")) { return false; }
@@ -246,8 +797,12 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
             case "setupdaterate": return handleSetUpdateRate(sender, args, label);
             case "togglenames": return handleToggleNamesCommand(sender, label);
             case "toggley": return handleToggleYCommand(sender, label);
+            case "toggletrails": return handleToggleTrailsCommand(sender, label);
+            case "toggleheatmap": return handleToggleHeatmapCommand(sender, label);
             case "togglenameplate": return handleToggleNameplateCommand(sender, label);
             case "reload": return handleReloadCommand(sender, label);
+            case "status": return handleStatusCommand(sender, label, args);
+            case "stats": return handleStatsCommand(sender, label, args);
             default: sender.sendMessage(ChatColor.RED + "Unknown subcommand: /" + label + " " + args[0]); return handleHelpCommand(sender, label);
         }
     }
@@ -270,9 +825,13 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
             subcommands.add("setupdaterate");
             subcommands.add("togglenames");
             subcommands.add("toggley");
+            subcommands.add("toggletrails");
+            subcommands.add("toggleheatmap");
             subcommands.add("togglenameplate");
             subcommands.add("refresh");
             subcommands.add("reload");
+            subcommands.add("status");
+            subcommands.add("stats");
             // "locate" is listed in onCommand but marked as "Not implemented," so we exclude it here.
 
             return subcommands.stream()
@@ -305,6 +864,10 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
                             .filter(s -> s.startsWith(args[1]))
                             .collect(Collectors.toList());
 
+                case "stats":
+                    return "reset".startsWith(args[1].toLowerCase(Locale.ROOT))
+                            ? Collections.singletonList("reset") : Collections.emptyList();
+
                 default:
                     // No more arguments expected for other commands
                     return Collections.emptyList();
@@ -353,6 +916,7 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         // 3. Create the map with the requested scale
         MapView createdMap = createAndConfigureMap(player.getWorld(), snappedCenterX, snappedCenterZ, player, targetScale);
         trackMapCoordinates(createdMap);
+        prepareTerrain(createdMap, player);
 
         player.sendMessage(ChatColor.GREEN + "Map generated at scale " + targetScale.ordinal() + ".");
         player.sendMessage(ChatColor.GRAY + "(Center: X=" + snappedCenterX + ", Z=" + snappedCenterZ + ")");
@@ -365,13 +929,7 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
 
         Player player = (Player) sender;
 
-        // 1. If confirmation is pending, open the confirmation GUI directly
-        if (playersPendingConfirmation.contains(player.getUniqueId())) {
-             openConfirmationGui(player);
-             return true;
-        }
-
-        // 2. Check for a previously selected scale (Session Persistence)
+        // Check for a previously selected scale (Session Persistence)
         MapView.Scale targetScale = lastSelectedScale.get(player.getUniqueId());
 
         if (targetScale != null) {
@@ -391,27 +949,17 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
     private MapView createAndConfigureMap(World world, int centerX, int centerZ, Player player, MapView.Scale scale) {
         MapView newMapView = Bukkit.createMap(world);
 
-        List<MapRenderer> toRemove = new ArrayList<>();
-        for (MapRenderer renderer : newMapView.getRenderers()) {
-            if (renderer instanceof PlayerTrackerRenderer) {
-                toRemove.add(renderer);
-            }
-        }
-        for (MapRenderer renderer : toRemove) {
-            newMapView.removeRenderer(renderer);
-        }
-
         newMapView.setCenterX(centerX);
         newMapView.setCenterZ(centerZ);
         newMapView.setTrackingPosition(false);
         newMapView.setLocked(false);
         // USE THE PROVIDED SCALE
         newMapView.setScale(scale);
-        newMapView.addRenderer(new PlayerTrackerRenderer(this));
+        attachRenderer(newMapView);
+        mapRegistry.add(newMapView.getId());
 
         if (player != null) {
-            this.mapCreationCounter++;
-            String mapName = ChatColor.AQUA + "Live Map #" + this.mapCreationCounter + " (Scale " + scale.ordinal() + ")";
+            String mapName = ChatColor.AQUA + "Live Map #" + mapIndex.nextCreationNumber() + " (Scale " + scale.ordinal() + ")";
 
             ItemStack mapItem = new ItemStack(Material.FILLED_MAP);
             MapMeta meta = (MapMeta) mapItem.getItemMeta();
@@ -428,6 +976,7 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
     // --- GUI METHODS ---
 
     private void openScaleSelectionGui(Player player) {
+        long started = System.nanoTime();
         Inventory gui = Bukkit.createInventory(player, 9, ChatColor.DARK_GREEN + "Select Map Scale (Zoom Level)");
 
         for (int i = 0; i <= 4; i++) {
@@ -466,10 +1015,12 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
             gui.setItem(i + 2, item);
         }
 
+        metrics.recordSince(PerformanceMetrics.Timer.GUI, started);
         player.openInventory(gui);
     }
 
     private void openDirectionalGridGui(Player player, Location centerLocation, MapView.Scale targetScale) {
+        long started = System.nanoTime();
         Inventory gui = Bukkit.createInventory(player, 54, ChatColor.DARK_GREEN + "Live Map Grid (5x5)");
 
         // Grid snapping logic now uses the TARGET SCALE for block area to match the chosen map size
@@ -492,7 +1043,9 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
                 int targetCenterZ = targetGridZ + centerOffset;
 
                 boolean isCurrentCenter = (xOffset == 0 && zOffset == 0);
-                boolean alreadyGenerated = isMapGenerated(world, targetCenterX, targetCenterZ);
+                int existingMapId = mapIndex.get(world.getUID(), targetCenterX, targetCenterZ, targetScale.ordinal());
+                boolean alreadyGenerated = existingMapId >= 0;
+                int renderProgress = alreadyGenerated ? terrainRenderer.progress(existingMapId) : -1;
 
                 Material iconMaterial;
                 ChatColor color;
@@ -500,6 +1053,9 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
                 if (isCurrentCenter) {
                     iconMaterial = Material.LIME_STAINED_GLASS_PANE;
                     color = ChatColor.GREEN;
+                } else if (renderProgress >= 0) {
+                    iconMaterial = Material.YELLOW_STAINED_GLASS_PANE;
+                    color = ChatColor.YELLOW;
                 } else if (alreadyGenerated) {
                     iconMaterial = Material.GREEN_STAINED_GLASS_PANE;
                     color = ChatColor.GREEN;
@@ -519,6 +1075,11 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
                 // Updated Lore to reflect the actual area covered by the grid square
                 lore.add(ChatColor.DARK_AQUA + "Area: " + mapBlockArea + "x" + mapBlockArea + " blocks");
                 lore.add(ChatColor.DARK_AQUA + "Map Scale: " + targetScale.ordinal());
+                if (renderProgress >= 0) {
+                    lore.add(ChatColor.YELLOW + "Rendering terrain: " + renderProgress + "%");
+                } else if (alreadyGenerated) {
+                    lore.add(ChatColor.GREEN + "Map #" + existingMapId + (baseLayers.contains(existingMapId) ? " (terrain rendered)" : ""));
+                }
                 meta.setLore(lore);
 
                 // Store center coordinates and the requested scale in PDC
@@ -546,6 +1107,7 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
             if (gui.getItem(i) == null) gui.setItem(i, filler);
         }
 
+        metrics.recordSince(PerformanceMetrics.Timer.GUI, started);
         player.openInventory(gui);
     }
 
@@ -561,32 +1123,12 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         if (meta == null) return;
 
         boolean isGridGui = title.startsWith(ChatColor.DARK_GREEN + "Live Map Grid (5x5)");
-        boolean isConfirmGui = title.startsWith(ChatColor.AQUA + "Confirm Map Generation");
         boolean isScaleGui = title.startsWith(ChatColor.DARK_GREEN + "Select Map Scale (Zoom Level)");
 
 
-        if (isGridGui || isConfirmGui || isScaleGui) {
+        if (isGridGui || isScaleGui) {
             event.setCancelled(true);
 
-            if (isConfirmGui) {
-                if (meta.getPersistentDataContainer().has(confirmKey, PersistentDataType.BYTE)) {
-                    playersPendingConfirmation.remove(player.getUniqueId());
-                    player.closeInventory();
-
-                    MapView.Scale targetScale = lastSelectedScale.get(player.getUniqueId());
-
-                    if (targetScale != null) {
-                        // NEW LOGIC: Immediately re-open the grid GUI
-                        openDirectionalGridGui(player, player.getLocation(), targetScale);
-                        player.sendMessage(ChatColor.GREEN + "Confirmed. Continuing map generation session.");
-                    } else {
-                        // Fallback if session data was somehow lost
-                        player.sendMessage(ChatColor.GREEN + "Confirmed. Map session closed (scale data missing). Run /livemap grid to start a new session.");
-                    }
-                }
-                return;
-            }
-
             // Handle Scale Selection Click
             if (isScaleGui) {
                 if (meta.getPersistentDataContainer().has(scaleSelectionKey, PersistentDataType.INTEGER)) {
@@ -627,22 +1169,23 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
 
                         if (world == null) return;
 
-                        if (!isMapGenerated(world, centerX, centerZ)) {
+                        MapView mapView;
+                        if (!isMapGenerated(world, centerX, centerZ, mapScale)) {
                             // Pass the requested scale to the creation method
-                            MapView newMap = createAndConfigureMap(world, centerX, centerZ, player, mapScale);
-                            trackMapCoordinates(newMap);
+                            mapView = createAndConfigureMap(world, centerX, centerZ, player, mapScale);
+                            trackMapCoordinates(mapView);
+                        } else {
+                            mapView = Bukkit.getMap(mapIndex.get(world.getUID(), centerX, centerZ, mapScale.ordinal()));
                         }
 
-                        int y = world.getHighestBlockYAt(centerX, centerZ) + 1;
-                        Location targetLoc = new Location(world, centerX + 0.5, y, centerZ + 0.5);
+                        // The terrain is pre-rendered in the background, so there is nothing to explore or confirm.
+                        if (mapView != null) {
+                            prepareTerrain(mapView, player);
+                        }
 
+                        // Re-open the grid so the session can continue right away.
                         player.closeInventory();
-                        player.teleport(targetLoc);
-
-                        playersPendingConfirmation.add(player.getUniqueId());
-
-                        // Message prompting user to render map
-                        player.sendMessage(ChatColor.AQUA + "Teleported. Map created at scale " + mapScale.ordinal() + ". " + ChatColor.YELLOW + "Move around the area to fully render the map " + ChatColor.AQUA + "before using " + ChatColor.YELLOW + "/livemap grid" + ChatColor.AQUA + " to confirm.");
+                        openDirectionalGridGui(player, player.getLocation(), mapScale);
 
                     } catch (Exception e) {
                         player.closeInventory();
@@ -652,65 +1195,80 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         }
     }
 
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        // The name label will not be drawn again until the player rejoins.
+        labelCache.invalidate(ChatColor.stripColor(event.getPlayer().getName()));
+        trails.remove(event.getPlayer().getUniqueId());
+        bandwidth.remove(event.getPlayer().getUniqueId());
+    }
+
     // --- OTHER METHODS (UNMODIFIED) ---
 
+    // Queues every map frame for the nameplate update; the tick scheduler works through them a slice at a time.
     private void applyItemFrameNameplateVisibility(boolean visible) {
         for (World world : Bukkit.getWorlds()) {
-            for (Entity entity : world.getEntities()) {
-                if (entity instanceof ItemFrame) {
-                    ItemFrame frame = (ItemFrame) entity;
-                    ItemStack mapItem = frame.getItem();
-
-                    if (mapItem.getType() == Material.FILLED_MAP || mapItem.getType() == Material.MAP) {
-                        ItemStack originalMap = mapItem.clone();
-                        MapMeta mapMeta = (MapMeta) originalMap.getItemMeta();
-
-                        if (visible) {
-                            if (frame.getPersistentDataContainer().has(storedNameKey, PersistentDataType.STRING)) {
-                                String storedName = frame.getPersistentDataContainer().get(storedNameKey, PersistentDataType.STRING);
-                                frame.setCustomName(storedName);
-                                frame.getPersistentDataContainer().remove(storedNameKey);
-                            }
-                            if (frame.getPersistentDataContainer().has(storedMapItemNameKey, PersistentDataType.STRING)) {
-                                String storedMapName = frame.getPersistentDataContainer().get(storedMapItemNameKey, PersistentDataType.STRING);
-                                mapMeta.setDisplayName(storedMapName);
-                                originalMap.setItemMeta(mapMeta);
-                                frame.getPersistentDataContainer().remove(storedMapItemNameKey);
-                            }
-
-                            boolean hasAnyCustomName =
-                                (frame.getCustomName() != null && !frame.getCustomName().isEmpty()) ||
-                                (mapMeta.hasDisplayName());
-
-                            frame.setCustomNameVisible(hasAnyCustomName);
+            for (ItemFrame frame : world.getEntitiesByClass(ItemFrame.class)) {
+                tickScheduler.offer(TickScheduler.Lane.FRAMES, frame.getUniqueId(), () -> {
+                    long started = System.nanoTime();
+                    applyNameplateVisibility(frame, visible);
+                    metrics.recordSince(PerformanceMetrics.Timer.NAMEPLATE, started);
+                });
+            }
+        }
+    }
 
-                        } else {
-                            if (frame.getCustomName() != null && !frame.getCustomName().isEmpty()) {
-                                frame.getPersistentDataContainer().set(storedNameKey, PersistentDataType.STRING, frame.getCustomName());
-                                frame.setCustomName(null);
-                            }
-
-                            if (mapMeta.hasDisplayName()) {
-                                frame.getPersistentDataContainer().set(storedMapItemNameKey, PersistentDataType.STRING, mapMeta.getDisplayName());
-                                mapMeta.setDisplayName(null);
-                                originalMap.setItemMeta(mapMeta);
-                            }
-
-                            frame.setCustomNameVisible(false);
-                        }
+    private void applyNameplateVisibility(ItemFrame frame, boolean visible) {
+        if (!frame.isValid()) return;
+        ItemStack mapItem = frame.getItem();
 
-                        frame.setItem(new ItemStack(Material.AIR), false);
+        if (mapItem.getType() == Material.FILLED_MAP || mapItem.getType() == Material.MAP) {
+            ItemStack originalMap = mapItem.clone();
+            MapMeta mapMeta = (MapMeta) originalMap.getItemMeta();
 
-                        Bukkit.getScheduler().runTaskLater(this, () -> {
-                            frame.setItem(originalMap, false);
+            if (visible) {
+                if (frame.getPersistentDataContainer().has(storedNameKey, PersistentDataType.STRING)) {
+                    String storedName = frame.getPersistentDataContainer().get(storedNameKey, PersistentDataType.STRING);
+                    frame.setCustomName(storedName);
+                    frame.getPersistentDataContainer().remove(storedNameKey);
+                }
+                if (frame.getPersistentDataContainer().has(storedMapItemNameKey, PersistentDataType.STRING)) {
+                    String storedMapName = frame.getPersistentDataContainer().get(storedMapItemNameKey, PersistentDataType.STRING);
+                    mapMeta.setDisplayName(storedMapName);
+                    originalMap.setItemMeta(mapMeta);
+                    frame.getPersistentDataContainer().remove(storedMapItemNameKey);
+                }
 
-                            if (frame.getRotation() != null) {
-                                frame.setRotation(frame.getRotation());
-                            }
-                        }, 1L);
-                    }
+                boolean hasAnyCustomName =
+                    (frame.getCustomName() != null && !frame.getCustomName().isEmpty()) ||
+                    (mapMeta.hasDisplayName());
+
+                frame.setCustomNameVisible(hasAnyCustomName);
+
+            } else {
+                if (frame.getCustomName() != null && !frame.getCustomName().isEmpty()) {
+                    frame.getPersistentDataContainer().set(storedNameKey, PersistentDataType.STRING, frame.getCustomName());
+                    frame.setCustomName(null);
                 }
+
+                if (mapMeta.hasDisplayName()) {
+                    frame.getPersistentDataContainer().set(storedMapItemNameKey, PersistentDataType.STRING, mapMeta.getDisplayName());
+                    mapMeta.setDisplayName(null);
+                    originalMap.setItemMeta(mapMeta);
+                }
+
+                frame.setCustomNameVisible(false);
             }
+
+            frame.setItem(new ItemStack(Material.AIR), false);
+
+            Bukkit.getScheduler().runTaskLater(this, () -> {
+                frame.setItem(originalMap, false);
+
+                if (frame.getRotation() != null) {
+                    frame.setRotation(frame.getRotation());
+                }
+            }, 1L);
         }
     }
 
@@ -758,14 +1316,9 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
 
         MapView view = meta.getMapView();
 
-        List<MapRenderer> toRemove = new ArrayList<>(view.getRenderers());
-        for (MapRenderer renderer : toRemove) {
-            if (renderer instanceof PlayerTrackerRenderer) {
-                view.removeRenderer(renderer);
-            }
-        }
-
-        view.addRenderer(new PlayerTrackerRenderer(this));
+        attachRenderer(view);
+        mapRegistry.add(view.getId());
+        trackMapCoordinates(view);
 
         Bukkit.getScheduler().runTask(this, () -> {
             player.getInventory().setItemInMainHand(item);
@@ -787,6 +1340,7 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
 
         getConfig().set("show-player-names", this.showPlayerNames);
         saveConfig();
+        invalidateAllMaps();
 
         Bukkit.getScheduler().runTask(this, this::startImmediateMapUpdate);
 
@@ -796,6 +1350,50 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         return true;
     }
 
+    private boolean handleToggleTrailsCommand(CommandSender sender, String label) {
+        if (!sender.hasPermission("livemap.config")) {
+            sender.sendMessage(ChatColor.RED + "You do not have permission to run this command.");
+            return true;
+        }
+
+        this.showTrails = !this.showTrails;
+        getConfig().set("show-trails", this.showTrails);
+        saveConfig();
+        // Trails start over, instead of joining up with positions from before they were hidden.
+        trails.clear();
+        trailFrame = null;
+        invalidateAllMaps();
+
+        Bukkit.getScheduler().runTask(this, this::startImmediateMapUpdate);
+
+        String status = this.showTrails ? ChatColor.GREEN + "ON" : ChatColor.RED + "OFF";
+        sender.sendMessage(ChatColor.AQUA + "Player trails toggled " + status + ChatColor.AQUA + " on all live maps.");
+
+        return true;
+    }
+
+    private boolean handleToggleHeatmapCommand(CommandSender sender, String label) {
+        if (!sender.hasPermission("livemap.config")) {
+            sender.sendMessage(ChatColor.RED + "You do not have permission to run this command.");
+            return true;
+        }
+
+        this.showHeatmap = !this.showHeatmap;
+        getConfig().set("show-heatmap", this.showHeatmap);
+        saveConfig();
+        if (!this.showHeatmap) {
+            heatmaps.clear();
+        }
+        invalidateAllMaps();
+
+        Bukkit.getScheduler().runTask(this, this::startImmediateMapUpdate);
+
+        String status = this.showHeatmap ? ChatColor.GREEN + "ON" : ChatColor.RED + "OFF";
+        sender.sendMessage(ChatColor.AQUA + "Activity heatmap toggled " + status + ChatColor.AQUA + " on all live maps.");
+
+        return true;
+    }
+
     private boolean handleToggleYCommand(CommandSender sender, String label) {
         if (!sender.hasPermission("livemap.config")) {
             sender.sendMessage(ChatColor.RED + "You do not have permission to run this command.");
@@ -805,6 +1403,7 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         this.showYLevel = !this.showYLevel;
         getConfig().set("show-y-level", this.showYLevel);
         saveConfig();
+        invalidateAllMaps();
 
         Bukkit.getScheduler().runTask(this, this::startImmediateMapUpdate);
 
@@ -821,6 +1420,7 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         }
 
         reinitializeMaps();
+        rebuildFrameIndex();
         Bukkit.getScheduler().runTask(this, this::startImmediateMapUpdate);
 
         sender.sendMessage(ChatColor.GREEN + "Refreshed custom renderers on all maps.");
@@ -832,12 +1432,17 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
             sender.sendMessage(ChatColor.RED + "You do not have permission to run this command.");
             return true;
         }
+        boolean wasContextual = this.contextualRendering;
         reloadConfig();
         loadConfigSettings();
-        generatedMapCoordinates.clear();
-        playersPendingConfirmation.clear();
+        if (wasContextual != this.contextualRendering) {
+            // Contextual rendering is fixed per renderer, so switching modes needs fresh renderers.
+            reinitializeMaps();
+        }
+        positionCache.start(this, this.cacheUpdateIntervalTicks);
+        startRefreshTask();
+        invalidateAllMaps();
         lastSelectedScale.clear(); // Clear session data on reload
-        this.mapCreationCounter = 0;
 
         applyItemFrameNameplateVisibility(this.showItemFrameNameplate);
 
@@ -845,6 +1450,127 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         return true;
     }
 
+    private boolean handleStatusCommand(CommandSender sender, String label, String[] args) {
+        if (!sender.hasPermission("livemap.config")) {
+            sender.sendMessage(ChatColor.RED + "You do not have permission to run this command.");
+            return true;
+        }
+
+        if (args.length >= 2) {
+            int mapId;
+            try {
+                mapId = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + "Usage: /" + label + " status [map id]");
+                return true;
+            }
+            RefreshScheduler.Rate rate = refreshScheduler.rate(mapId);
+            if (!mapRegistry.contains(mapId)) {
+                sender.sendMessage(ChatColor.RED + "Map #" + mapId + " is not a live map.");
+            } else if (!mapActivation.isActive(mapId) || rate == null) {
+                sender.sendMessage(ChatColor.GRAY + "Map #" + mapId + " is inactive (nobody is near it or holding it).");
+            } else {
+                sender.sendMessage(ChatColor.AQUA + "Map #" + mapId + ": every " + ChatColor.YELLOW + rate.intervalTicks + " ticks"
+                        + ChatColor.GRAY + " (" + rate.reason() + ")");
+            }
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.DARK_AQUA + "--- Live Map Status ---");
+        sender.sendMessage(ChatColor.YELLOW + "Live maps: " + mapRegistry.size() + ", active: " + mapActivation.activeCount()
+                + ", held: " + mapActivation.heldCount() + ", indexed frames: " + frameIndex.size());
+        sender.sendMessage(ChatColor.YELLOW + "Refresh interval: " + refreshScheduler.getMinTicks() + "-" + refreshScheduler.getMaxTicks() + " ticks");
+        sender.sendMessage(ChatColor.YELLOW + "Tick budget: " + tickScheduler.getBudgetMillis() + " ms, last tick used "
+                + String.format("%.2f", tickScheduler.getLastTickMillis()) + " ms");
+        sender.sendMessage(ChatColor.YELLOW + "Backlog: " + tickScheduler.backlog() + " (refresh " + tickScheduler.backlog(TickScheduler.Lane.REFRESH)
+                + ", composition " + tickScheduler.backlog(TickScheduler.Lane.COMPOSE) + ", frames " + tickScheduler.backlog(TickScheduler.Lane.FRAMES)
+                + "), peak " + tickScheduler.getPeakBacklog());
+        sender.sendMessage(ChatColor.YELLOW + "Over budget: " + tickScheduler.getOverruns() + " of " + tickScheduler.getTicksWithWork()
+                + " busy ticks, carried over: " + tickScheduler.getCarriedOver());
+
+        // Busiest maps first.
+        List<Integer> active = new ArrayList<>();
+        refreshScheduler.forEach((mapId, rate) -> {
+            if (mapActivation.isActive(mapId)) active.add(mapId);
+        });
+        active.sort((a, b) -> Integer.compare(refreshScheduler.intervalTicks(a), refreshScheduler.intervalTicks(b)));
+        for (int i = 0; i < active.size() && i < 10; i++) {
+            RefreshScheduler.Rate rate = refreshScheduler.rate(active.get(i));
+            sender.sendMessage(ChatColor.GRAY + " #" + active.get(i) + ": every " + rate.intervalTicks + " ticks (" + rate.reason() + ")");
+        }
+        if (active.size() > 10) {
+            sender.sendMessage(ChatColor.GRAY + " ... and " + (active.size() - 10) + " more. Use /" + label + " status <map id>.");
+        }
+        return true;
+    }
+
+    // The players receiving the most map data, with the budget they are held to.
+    private void sendBandwidthStats(CommandSender sender) {
+        String budget = !bandwidth.isLimited() ? "unlimited"
+                : mapBandwidthPerPlayerKb + " KB/s" + (deferSharedMaps ? ", shared maps deferred" : "");
+        sender.sendMessage(ChatColor.DARK_AQUA + "--- Map Bandwidth per Player (est., budget " + budget + ") ---");
+
+        Map<UUID, BandwidthBudget.Account> accounts = new HashMap<>();
+        bandwidth.forEach(accounts::put);
+        if (accounts.isEmpty()) {
+            sender.sendMessage(ChatColor.GRAY + "No map data sent yet.");
+            return;
+        }
+        List<UUID> busiest = new ArrayList<>(accounts.keySet());
+        busiest.sort((a, b) -> Double.compare(accounts.get(b).bytesPerSecond, accounts.get(a).bytesPerSecond));
+        for (UUID playerId : busiest.subList(0, Math.min(5, busiest.size()))) {
+            BandwidthBudget.Account account = accounts.get(playerId);
+            Player player = Bukkit.getPlayer(playerId);
+            String name = player != null ? player.getName() : playerId.toString();
+            sender.sendMessage(ChatColor.YELLOW + name + ChatColor.GRAY + ": "
+                    + String.format(Locale.ROOT, "%.1f", account.bytesPerSecond / 1024.0) + " KB/s, "
+                    + (account.totalBytes / 1024) + " KB total, " + account.deferred + " renders deferred");
+        }
+        if (accounts.size() > 5) {
+            sender.sendMessage(ChatColor.GRAY + "... and " + (accounts.size() - 5) + " more.");
+        }
+    }
+
+    private boolean handleStatsCommand(CommandSender sender, String label, String[] args) {
+        if (!sender.hasPermission("livemap.config")) {
+            sender.sendMessage(ChatColor.RED + "You do not have permission to run this command.");
+            return true;
+        }
+
+        if (args.length >= 2 && args[1].equalsIgnoreCase("reset")) {
+            metrics.reset();
+            bandwidth.clear();
+            sender.sendMessage(ChatColor.GREEN + "Live map statistics reset.");
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.DARK_AQUA + "--- Live Map Stats (microseconds) ---");
+        for (PerformanceMetrics.Timer timer : PerformanceMetrics.Timer.values()) {
+            PerformanceMetrics.Histogram histogram = metrics.timer(timer);
+            if (histogram.count() == 0) {
+                sender.sendMessage(ChatColor.GRAY + timer.displayName + ": no samples");
+                continue;
+            }
+            sender.sendMessage(ChatColor.YELLOW + timer.displayName + ChatColor.GRAY + ": " + histogram.count() + " samples, mean "
+                    + micros(histogram.meanNanos()) + ", p50 " + micros(histogram.percentileNanos(0.50))
+                    + ", p95 " + micros(histogram.percentileNanos(0.95)) + ", p99 " + micros(histogram.percentileNanos(0.99))
+                    + ", max " + micros(histogram.maxNanos()));
+        }
+        for (PerformanceMetrics.Counter counter : PerformanceMetrics.Counter.values()) {
+            sender.sendMessage(ChatColor.YELLOW + counter.displayName + ChatColor.GRAY + ": " + metrics.total(counter)
+                    + " total, " + String.format(Locale.ROOT, "%.1f", metrics.ratePerSecond(counter)) + "/s");
+        }
+        sendBandwidthStats(sender);
+        if (metricsDumpIntervalSeconds > 0) {
+            sender.sendMessage(ChatColor.GRAY + "Appended to metrics.jsonl every " + metricsDumpIntervalSeconds + " seconds.");
+        }
+        return true;
+    }
+
+    private static String micros(double nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
     private boolean handleLocateCommand(CommandSender sender, String label) {
         if (!(sender instanceof Player)) { sender.sendMessage(ChatColor.RED + "This command can only be run by a player."); return true; }
         if (!sender.hasPermission("livemap.config")) { sender.sendMessage(ChatColor.RED + "No permission."); return true; }
@@ -870,7 +1596,7 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
             this.cacheUpdateIntervalTicks = newRate;
             getConfig().set("update-interval-ticks", newRate);
             saveConfig();
-            reinitializeMaps();
+            positionCache.start(this, newRate);
             sender.sendMessage(ChatColor.GREEN + "Update rate set to " + newRate + " ticks.");
         } catch (NumberFormatException e) {
             sender.sendMessage(ChatColor.RED + "Invalid number.");
@@ -885,231 +1611,102 @@ public class LiveMaps extends JavaPlugin implements Listener, TabCompleter {
         sender.sendMessage(ChatColor.YELLOW + "/livemap use - Apply renderer to held map");
         sender.sendMessage(ChatColor.YELLOW + "/livemap togglenames - Toggle player name tags on maps");
         sender.sendMessage(ChatColor.YELLOW + "/livemap toggley - Toggle vertical (Y-Level) tracking");
+        sender.sendMessage(ChatColor.YELLOW + "/livemap toggletrails - Toggle the fading trails behind players");
+        sender.sendMessage(ChatColor.YELLOW + "/livemap toggleheatmap - Toggle the player activity heatmap");
         sender.sendMessage(ChatColor.YELLOW + "/livemap togglenameplate - Toggle the item frame nameplate visibility");
         sender.sendMessage(ChatColor.YELLOW + "/livemap refresh");
         sender.sendMessage(ChatColor.YELLOW + "/livemap reload");
+        sender.sendMessage(ChatColor.YELLOW + "/livemap status [map id] - Show which maps are active and how often they refresh");
+        sender.sendMessage(ChatColor.YELLOW + "/livemap stats [reset] - Show subsystem timings and counters");
         return true;
     }
 
-    private void openConfirmationGui(Player player) {
-        Inventory gui = Bukkit.createInventory(player, 9, ChatColor.AQUA + "Confirm Map Generation");
-        ItemStack confirmButton = new ItemStack(Material.LIME_CONCRETE);
-        ItemMeta meta = confirmButton.getItemMeta();
-        if (meta != null) {
-            meta.setDisplayName(ChatColor.GREEN + "" + ChatColor.BOLD + "Map Chunks Generated - Continue");
-            meta.setLore(Collections.singletonList(ChatColor.GRAY + "Click to confirm area is loaded."));
-            meta.getPersistentDataContainer().set(confirmKey, PersistentDataType.BYTE, (byte) 1);
-            confirmButton.setItemMeta(meta);
-        }
-        gui.setItem(4, confirmButton);
-        player.openInventory(gui);
-    }
-
     private void trackMapCoordinates(MapView view) {
-        // Track maps using their center coordinates
-        String coordinateString = view.getWorld().getName() + "," + view.getCenterX() + "," + view.getCenterZ();
-        generatedMapCoordinates.add(coordinateString);
+        // Track maps using their center coordinates and scale
+        if (view.getWorld() == null) return;
+        mapIndex.put(view.getWorld().getUID(), view.getCenterX(), view.getCenterZ(), view.getScale().ordinal(), view.getId());
     }
 
-    private boolean isMapGenerated(World world, int centerX, int centerZ) {
-        // Check if a map has been generated for these center coordinates
-        String coordinateString = world.getName() + "," + centerX + "," + centerZ;
-        return generatedMapCoordinates.contains(coordinateString);
+    private boolean isMapGenerated(World world, int centerX, int centerZ, MapView.Scale scale) {
+        // Check if a map has been generated for these center coordinates at this scale
+        return mapIndex.contains(world.getUID(), centerX, centerZ, scale.ordinal());
     }
 
-    // --- Custom MapRenderer Class (No changes needed) ---
-    private class PlayerTrackerRenderer extends MapRenderer {
-
-        private final LiveMaps plugin;
+    // Estimated size of the cursor list each map last got, for the cursor share of the bandwidth figures.
+    private final Map<Integer, Integer> cursorListBytes = new HashMap<>();
 
-        private final Map<Integer, Byte> modifiedPixels = new HashMap<>();
+    // What every PlayerTrackerRenderer does on a render call.
+    private final MapRenderPass renderPass = new MapRenderPass(new RenderContext());
 
-        private final byte[] PLAYER_COLOR_IDS = new byte[] {
-            34, 58, 86, 98, 114, 126, 78, 90, 102, 110, 66, 74
-        };
-        private static final byte DIRECTION_LINE_COLOR_ID = 119;
+    // The plugin state render calls read, looked up on each call since reloads replace some of it.
+    private class RenderContext implements MapRenderPass.Context {
 
-        public PlayerTrackerRenderer(LiveMaps plugin) {
-            super(false);
-            this.plugin = plugin;
+        @Override
+        public CompositionPipeline composition() {
+            return composition;
         }
 
         @Override
-        public void render(MapView map, MapCanvas canvas, Player holder) {
-            restoreMapBackground(canvas);
-
-            MapCursorCollection cursors = canvas.getCursors();
-            for (int i = cursors.size() - 1; i >= 0; i--) {
-                 cursors.removeCursor(cursors.getCursor(i));
-            }
-
-            MapView.Scale currentScale = map.getScale();
-            int scaleFactor = plugin.getScaleFactor(currentScale);
-
-            for (Player target : Bukkit.getOnlinePlayers()) {
-                if (!target.getWorld().equals(map.getWorld())) continue;
-
-                if (target.hasPotionEffect(PotionEffectType.INVISIBILITY)) {
-                    continue;
-                }
-
-                Location loc = target.getLocation();
-                int centerX = map.getCenterX();
-                int centerZ = map.getCenterZ();
-
-                int worldDiffX = loc.getBlockX() - centerX;
-                int worldDiffZ = loc.getBlockZ() - centerZ;
-
-                int mapX = (worldDiffX / scaleFactor) + 64;
-                int mapZ = (worldDiffZ / scaleFactor) + 64;
-
-                if (mapX >= 0 && mapX < 128 && mapZ >= 0 && mapZ < 128) {
-
-                    int colorIndex = Math.abs(target.getUniqueId().hashCode()) % PLAYER_COLOR_IDS.length;
-                    byte playerColor = PLAYER_COLOR_IDS[colorIndex];
-
-                    float yaw = loc.getYaw();
-                    drawLargeIcon(canvas, mapX, mapZ, yaw, playerColor, DIRECTION_LINE_COLOR_ID);
-
-                    if (plugin.showPlayerNames || plugin.showYLevel) {
-                        if (plugin.showYLevel) {
-                            int yLevel = loc.getBlockY();
-                            String yText = "" + yLevel;
-                            byte textColorID;
-                            if (yLevel > 100) {
-                                textColorID = (byte) 54;
-                            } else if (yLevel >= 54) {
-                                textColorID = (byte) 86;
-                            } else {
-                                textColorID = (byte) 114;
-                            }
-
-                            int width = MinecraftFont.Font.getWidth(yText);
-                            int height = MinecraftFont.Font.getHeight();
-                            int yTextX = mapX - (width / 2);
-                            int yTextY = mapZ - 8 - height;
-
-                            drawSmartRectangle(canvas, yTextX - 1, yTextY - 1, width + 2, height + 2, (byte) 119);
-                            drawSmartText(canvas, yTextX, yTextY, yText, textColorID);
-                        }
-
-                        if (plugin.showPlayerNames) {
-                            String name = ChatColor.stripColor(target.getName());
-                            if (name != null && !name.isEmpty() && MinecraftFont.Font.isValid(name)) {
-                                int width = MinecraftFont.Font.getWidth(name);
-                                int height = MinecraftFont.Font.getHeight();
-
-                                int textX = mapX - (width / 2);
-                                int textY = mapZ + 8;
-
-                                drawSmartRectangle(canvas, textX - 1, textY - 1, width + 2, height + 2, (byte) 119);
-                                drawSmartText(canvas, textX, textY, name, (byte) 34);
-                            }
-                        }
-                    }
-                }
-            }
+        public BaseLayerStore baseLayers() {
+            return baseLayers;
         }
 
-        private void restoreMapBackground(MapCanvas canvas) {
-            if (modifiedPixels.isEmpty()) return;
-
-            for (Map.Entry<Integer, Byte> entry : modifiedPixels.entrySet()) {
-                int index = entry.getKey();
-                int x = index % 128;
-                int y = index / 128;
-
-                if (x >= 0 && x < 128 && y >= 0 && y < 128) {
-                    canvas.setPixel(x, y, entry.getValue());
-                }
-            }
-            modifiedPixels.clear();
+        @Override
+        public HeatmapStore heatmaps() {
+            return showHeatmap ? heatmaps : null;
         }
 
-        private void setSmartPixel(MapCanvas canvas, int x, int y, byte colorId) {
-            if (x >= 0 && x < 128 && y >= 0 && y < 128) {
-                int index = y * 128 + x;
-                if (!modifiedPixels.containsKey(index)) {
-                    modifiedPixels.put(index, canvas.getPixel(x, y));
-                }
-                canvas.setPixel(x, y, colorId);
-            }
+        @Override
+        public boolean isUpdateDeferred(int mapId, Player contextualViewer, boolean pending) {
+            return LiveMaps.this.isUpdateDeferred(mapId, contextualViewer, pending);
         }
 
-        private void drawSmartRectangle(MapCanvas canvas, int x, int y, int width, int height, byte colorId) {
-            for (int py = y; py < y + height; py++) {
-                for (int px = x; px < x + width; px++) {
-                    setSmartPixel(canvas, px, py, colorId);
-                }
-            }
+        @Override
+        public boolean composeViewerDelta(int mapId, Player viewer, ViewerCanvas state) {
+            return LiveMaps.this.composeViewerDelta(mapId, viewer, state);
         }
 
-        private void drawSmartText(MapCanvas canvas, int x, int y, String text, byte colorId) {
-            int currentX = x;
-            for (int i = 0; i < text.length(); i++) {
-                char ch = text.charAt(i);
-                if (!MinecraftFont.Font.isValid(String.valueOf(ch))) continue;
+        @Override
+        public UUID[] viewerIds(int mapId) {
+            return mapActivation.viewerIds(mapId);
+        }
 
-                MapFont.CharacterSprite sprite = MinecraftFont.Font.getChar(ch);
-                for (int row = 0; row < sprite.getHeight(); row++) {
-                    for (int col = 0; col < sprite.getWidth(); col++) {
-                        if (sprite.get(row, col)) {
-                            setSmartPixel(canvas, currentX + col, y + row, colorId);
-                        }
-                    }
-                }
-                currentX += sprite.getWidth() + 1;
-            }
+        @Override
+        public PerformanceMetrics metrics() {
+            return metrics;
         }
 
-        private void drawLargeIcon(MapCanvas canvas, int centerX, int centerY, float yaw, byte fillColor, byte lineFillColor) {
-            int halfSize = 4;
-            for (int x = -halfSize; x <= halfSize; x++) {
-                for (int y = -halfSize; y <= halfSize; y++) {
-                    if (Math.abs(x) + Math.abs(y) <= halfSize) {
-                        setSmartPixel(canvas, centerX + x, centerY + y, fillColor);
-                    }
-                }
-            }
+        @Override
+        public BandwidthBudget bandwidth() {
+            return bandwidth;
+        }
 
-            float normalizedYaw = (yaw % 360 + 360) % 360;
-            double mapAngle = (normalizedYaw + 180) % 360;
-            double angleRad = Math.toRadians(mapAngle);
+        @Override
+        public void cursorListSent(int mapId, int bytes) {
+            cursorListBytes.put(mapId, bytes);
+        }
+    }
 
-            double cos = Math.cos(angleRad);
-            double sin = Math.sin(angleRad);
+    // --- Custom MapRenderer Class ---
+    private class PlayerTrackerRenderer extends MapRenderer {
 
-            double px = 0.0;
-            double py = -4.0;
+        private final LiveMaps plugin;
 
-            int tipX = (int) Math.round(centerX + (px * cos - py * sin));
-            int tipY = (int) Math.round(centerY + (px * sin + py * cos));
+        // Canvas state of the single shared canvas when not contextual.
+        private final ViewerCanvas shared = new ViewerCanvas();
 
-            drawLine(canvas, centerX, centerY, tipX, tipY, lineFillColor);
+        // Contextual mode: one state per viewer canvas, released together with the Player object.
+        private final Map<Player, ViewerCanvas> viewers = new WeakHashMap<>();
 
-            drawSmartRectangle(canvas, tipX - 1, tipY - 1, 2, 2, lineFillColor);
+        public PlayerTrackerRenderer(LiveMaps plugin, boolean contextual) {
+            super(contextual);
+            this.plugin = plugin;
         }
 
-        private void drawLine(MapCanvas canvas, int x0, int y0, int x1, int y1, byte colorId) {
-            int dx = Math.abs(x1 - x0);
-            int dy = Math.abs(y1 - y0);
-            int sx = x0 < x1 ? 1 : -1;
-            int sy = y0 < y1 ? 1 : -1;
-            int err = dx - dy;
-
-            while (true) {
-                setSmartPixel(canvas, x0, y0, colorId);
-                if (x0 == x1 && y0 == y1) break;
-                int e2 = 2 * err;
-                if (e2 > -dy) {
-                    err -= dy;
-                    x0 += sx;
-                }
-                if (e2 < dx) {
-                    err += dx;
-                    y0 += sy;
-                }
-            }
+        @Override
+        public void render(MapView map, MapCanvas canvas, Player holder) {
+            ViewerCanvas state = isContextual() ? viewers.computeIfAbsent(holder, p -> new ViewerCanvas()) : shared;
+            plugin.renderPass.render(map.getId(), canvas, state, isContextual() ? holder : null);
         }
     }
 }
@@ -0,0 +1,117 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to int values, with no boxing.
+ * {@link Long#MIN_VALUE} is reserved as the empty-slot marker and cannot be used as a key.
+ */
+final class LongIntMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    LongIntMap() {
+        this(16);
+    }
+
+    LongIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(8, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Returns the value for the key, or {@code missing} if the key is absent.
+     */
+    int get(long key, int missing) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) return values[slot];
+            if (k == EMPTY) return missing;
+        }
+    }
+
+    boolean containsKey(long key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) return true;
+            if (k == EMPTY) return false;
+        }
+    }
+
+    void put(long key, int value) {
+        if (key == EMPTY) throw new IllegalArgumentException("Reserved key");
+        if ((size + 1) * 2 > keys.length) grow();
+
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) {
+                values[slot] = value;
+                return;
+            }
+            if (k == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Removes every entry but keeps the capacity, so a reused map does not allocate again.
+    void clear() {
+        if (size == 0) return;
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    // Slot-level access for iteration: visit every slot below capacity() where isUsed(slot).
+    int capacity() { return keys.length; }
+    boolean isUsed(int slot) { return keys[slot] != EMPTY; }
+    long keyAt(int slot) { return keys[slot]; }
+    int valueAt(int slot) { return values[slot]; }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
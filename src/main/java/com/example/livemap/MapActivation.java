@@ -0,0 +1,179 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Which live maps anyone can currently see, and roughly by how many players: holders of the map, plus
+ * players within view range of an item frame showing it. Recomputed from each position snapshot against
+ * the frame index; inactive maps get no projection, composition or refresh work. Main thread only.
+ */
+final class MapActivation {
+
+    // Viewer count per active map. Maps absent from the map are inactive.
+    private Map<Integer, Integer> viewers = new HashMap<>();
+    private int viewRange;
+    private int heldCount = 0;
+
+    // Who can see each active map: its holders and everyone near one of its frames. Used for bandwidth accounting.
+    private Map<Integer, UUID[]> viewerIds = new HashMap<>();
+    // How close each of those viewers is to the map, parallel to viewerIds: 1 in hand or next to a frame,
+    // falling to 0 at the edge of the view range. Used to decide which tiles wait first for bandwidth.
+    private Map<Integer, float[]> closeness = new HashMap<>();
+    private Set<Integer> heldMaps = Collections.emptySet();
+
+    private static final UUID[] NO_VIEWERS = new UUID[0];
+    private static final float[] NO_CLOSENESS = new float[0];
+
+    // Scratch for the players near one frame chunk.
+    private int[] nearby = new int[0];
+
+    MapActivation(int viewRange) {
+        setViewRange(viewRange);
+    }
+
+    void setViewRange(int viewRange) {
+        this.viewRange = Math.max(0, viewRange);
+    }
+
+    int getViewRange() {
+        return viewRange;
+    }
+
+    /**
+     * Recomputes the active maps. Frames are tested per chunk, so a chunk counts as seen when a player
+     * is within range of any block of it. A map's viewer count is its holders plus the players near its
+     * busiest frame chunk, so one player standing between two frames of the same map is not counted twice.
+     *
+     * @param holders the players holding each live map
+     */
+    void update(PlayerSnapshot snapshot, FrameIndex frames, Map<Integer, List<UUID>> holders) {
+        Map<Integer, Integer> held = new HashMap<>();
+        Map<Integer, Map<UUID, Float>> seenBy = new HashMap<>();
+        holders.forEach((mapId, ids) -> {
+            held.put(mapId, ids.size());
+            Map<UUID, Float> seen = seenBy.computeIfAbsent(mapId, id -> new HashMap<>());
+            for (UUID holder : ids) {
+                seen.put(holder, 1f);
+            }
+        });
+        heldCount = held.size();
+
+        if (nearby.length < snapshot.size()) {
+            nearby = new int[snapshot.size()];
+        }
+        int[] players = nearby;
+        Map<Integer, Integer> nearFrames = new HashMap<>();
+        frames.forEachChunk((worldId, chunkX, chunkZ, mapIds) -> {
+            int minX = (chunkX << 4) - viewRange;
+            int minZ = (chunkZ << 4) - viewRange;
+            int maxX = (chunkX << 4) + 15 + viewRange;
+            int maxZ = (chunkZ << 4) + 15 + viewRange;
+
+            int near = snapshot.collectWithin(worldId, minX, minZ, maxX, maxZ, players);
+            if (near == 0) return;
+            for (int mapId : mapIds) {
+                nearFrames.merge(mapId, near, Math::max);
+                Map<UUID, Float> seen = seenBy.computeIfAbsent(mapId, id -> new HashMap<>());
+                for (int i = 0; i < near; i++) {
+                    int player = players[i];
+                    int dx = Math.max(0, Math.max((chunkX << 4) - snapshot.blockX(player), snapshot.blockX(player) - ((chunkX << 4) + 15)));
+                    int dz = Math.max(0, Math.max((chunkZ << 4) - snapshot.blockZ(player), snapshot.blockZ(player) - ((chunkZ << 4) + 15)));
+                    float close = viewRange == 0 ? 1f : Math.max(0f, 1f - (float) Math.max(dx, dz) / viewRange);
+                    seen.merge(snapshot.playerId(player), close, Math::max);
+                }
+            }
+        });
+
+        Map<Integer, Integer> next = new HashMap<>(held);
+        nearFrames.forEach((mapId, near) -> next.merge(mapId, near, Integer::sum));
+        viewers = next;
+
+        Map<Integer, UUID[]> nextIds = new HashMap<>();
+        Map<Integer, float[]> nextCloseness = new HashMap<>();
+        seenBy.forEach((mapId, seen) -> {
+            UUID[] ids = new UUID[seen.size()];
+            float[] close = new float[seen.size()];
+            int i = 0;
+            for (Map.Entry<UUID, Float> entry : seen.entrySet()) {
+                ids[i] = entry.getKey();
+                close[i++] = entry.getValue();
+            }
+            nextIds.put(mapId, ids);
+            nextCloseness.put(mapId, close);
+        });
+        viewerIds = nextIds;
+        closeness = nextCloseness;
+        heldMaps = held.keySet();
+    }
+
+    boolean isActive(int mapId) {
+        return viewers.containsKey(mapId);
+    }
+
+    // Players that can currently see the map; 0 when it is inactive.
+    int viewers(int mapId) {
+        return viewers.getOrDefault(mapId, 0);
+    }
+
+    // Every player that can currently see the map; empty when it is inactive. Do not modify.
+    UUID[] viewerIds(int mapId) {
+        return viewerIds.getOrDefault(mapId, NO_VIEWERS);
+    }
+
+    // Closeness of every viewer of the map, in viewerIds order. Do not modify.
+    float[] closeness(int mapId) {
+        return closeness.getOrDefault(mapId, NO_CLOSENESS);
+    }
+
+    // Closeness of one viewer to the map, or 0 if they cannot see it.
+    float closeness(int mapId, UUID viewer) {
+        UUID[] ids = viewerIds(mapId);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i].equals(viewer)) return closeness(mapId)[i];
+        }
+        return 0f;
+    }
+
+    // True if someone holds the map in their hand.
+    boolean isHeld(int mapId) {
+        return heldMaps.contains(mapId);
+    }
+
+    // A wall is active while any of its tiles is, since one job composes all of them.
+    boolean isActive(MapWall wall) {
+        for (int i = 0; i < wall.size(); i++) {
+            MapArea tile = wall.tileAt(i);
+            if (tile != null && viewers.containsKey(tile.mapId)) return true;
+        }
+        return false;
+    }
+
+    int activeCount() {
+        return viewers.size();
+    }
+
+    // Distinct live maps held in a player's hand during the last update.
+    int heldCount() {
+        return heldCount;
+    }
+}
@@ -0,0 +1,100 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.World;
+import org.bukkit.map.MapView;
+
+import java.util.UUID;
+
+/**
+ * The world area a map shows, copied out of its MapView on the main thread so workers can use it.
+ */
+final class MapArea {
+
+    final int mapId;
+    final UUID worldId;
+    final int centerX;
+    final int centerZ;
+    // Blocks per map pixel: 1 at scale 0, 16 at scale 4.
+    final int scaleFactor;
+
+    MapArea(int mapId, UUID worldId, int centerX, int centerZ, int scaleFactor) {
+        this.mapId = mapId;
+        this.worldId = worldId;
+        this.centerX = centerX;
+        this.centerZ = centerZ;
+        this.scaleFactor = scaleFactor;
+    }
+
+    /**
+     * Reads the view's area, or returns null if its world is not loaded.
+     */
+    static MapArea of(MapView view) {
+        World world = view.getWorld();
+        if (world == null) return null;
+        return new MapArea(view.getId(), world.getUID(), view.getCenterX(), view.getCenterZ(),
+                1 << view.getScale().ordinal());
+    }
+
+    // Block width covered by the map (128 pixels).
+    int blockArea() {
+        return scaleFactor * 128;
+    }
+
+    // North-west corner of the map area in block coordinates.
+    int originX() {
+        return centerX - scaleFactor * 64;
+    }
+
+    int originZ() {
+        return centerZ - scaleFactor * 64;
+    }
+
+    /**
+     * True if the map sits on the grid the grid GUI creates tiles on, so it can join a wall
+     * with its neighbours of the same scale.
+     */
+    boolean isGridAligned() {
+        return Math.floorMod(originX(), blockArea()) == 0 && Math.floorMod(originZ(), blockArea()) == 0;
+    }
+
+    // Grid tile coordinate of an aligned map.
+    int tileX() {
+        return Math.floorDiv(originX(), blockArea());
+    }
+
+    int tileZ() {
+        return Math.floorDiv(originZ(), blockArea());
+    }
+
+    // Map pixel column of a block X, 0-127 inside the map.
+    int pixelX(int blockX) {
+        return Math.floorDiv(blockX - originX(), scaleFactor);
+    }
+
+    int pixelZ(int blockZ) {
+        return Math.floorDiv(blockZ - originZ(), scaleFactor);
+    }
+
+    /**
+     * Collects the snapshot players standing inside the map area.
+     */
+    int collect(PlayerSnapshot snapshot, int[] out) {
+        return snapshot.collect(worldId, originX(), originZ(),
+                originX() + blockArea() - 1, originZ() + blockArea() - 1, out);
+    }
+}
@@ -0,0 +1,252 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.map.MapView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Per-map version stamps. A map's version only changes when what it would draw changes: a player
+ * enters or leaves its area, moves at least one map pixel, turns into another yaw bucket, or (with
+ * Y labels on) changes block Y. Renderers and the refresh loop skip maps whose version is unchanged.
+ * Signatures are taken per {@link MapWall}, so every tile of a wall changes in the same pass and labels
+ * that cross a tile edge are redrawn on both sides.
+ */
+final class MapChangeTracker {
+
+    private final Map<Integer, Tracked> maps = new HashMap<>();
+
+    // Wall layout of the tracked maps, rebuilt when a map is tracked or its world loads.
+    private List<MapWall> walls = new ArrayList<>();
+    private long[] wallSignatures = new long[0];
+    private boolean layoutDirty = false;
+
+    // Bumped by invalidateAll() and folded into every signature.
+    private int settingsEpoch = 0;
+
+    private int refreshPass = 0;
+    private int[] nearbyPlayers = new int[0];
+
+    void track(MapView view) {
+        if (maps.containsKey(view.getId())) return;
+        maps.put(view.getId(), new Tracked(view));
+        layoutDirty = true;
+    }
+
+    void clear() {
+        maps.clear();
+        walls = new ArrayList<>();
+        wallSignatures = new long[0];
+    }
+
+    /**
+     * Visits every wall with the current version of each tile slot (-1 for holes).
+     */
+    void forEachWall(BiConsumer<MapWall, int[]> visitor) {
+        refreshLayout();
+        for (MapWall wall : walls) {
+            int[] versions = new int[wall.size()];
+            for (int i = 0; i < versions.length; i++) {
+                MapArea tile = wall.tileAt(i);
+                versions[i] = tile == null ? -1 : version(tile.mapId);
+            }
+            visitor.accept(wall, versions);
+        }
+    }
+
+    // Current wall layout; read-only.
+    List<MapWall> walls() {
+        refreshLayout();
+        return Collections.unmodifiableList(walls);
+    }
+
+    // The wall the map belongs to, or null if the map is untracked or its world is not loaded.
+    MapWall wallOf(int mapId) {
+        refreshLayout();
+        Tracked tracked = maps.get(mapId);
+        return tracked == null ? null : tracked.wall;
+    }
+
+    // The map's slot index inside wallOf(mapId).
+    int tileIndexOf(int mapId) {
+        Tracked tracked = maps.get(mapId);
+        return tracked == null ? -1 : tracked.tileIndex;
+    }
+
+    int wallCount() {
+        refreshLayout();
+        return walls.size();
+    }
+
+    /**
+     * Current version of the map, or -1 if it is not tracked.
+     */
+    int version(int mapId) {
+        Tracked tracked = maps.get(mapId);
+        return tracked == null ? -1 : tracked.version;
+    }
+
+    /**
+     * Forces one map to re-render, e.g. after its base layer changed.
+     */
+    void invalidate(int mapId) {
+        Tracked tracked = maps.get(mapId);
+        if (tracked != null) tracked.version++;
+    }
+
+    /**
+     * Forces every map to re-render, e.g. after a display setting was toggled.
+     */
+    void invalidateAll() {
+        settingsEpoch++;
+        for (Tracked tracked : maps.values()) {
+            tracked.version++;
+        }
+    }
+
+    /**
+     * Recomputes the signature of every wall the filter accepts from a freshly published snapshot, and bumps
+     * the version of every tile whose wall signature changed. The filter is asked once per wall; skipped walls
+     * (inactive, or not due yet) keep their old signature and are caught up when they are next accepted.
+     * Main thread only.
+     *
+     * @param trails trails recorded from the same snapshot, or null when trails are hidden
+     */
+    void update(PlayerSnapshot snapshot, CursorStamps stamps, boolean includeY, TrailHistory.Frame trails,
+                Predicate<MapWall> shouldUpdate) {
+        if (nearbyPlayers.length < snapshot.size()) {
+            nearbyPlayers = new int[snapshot.size()];
+        }
+
+        refreshLayout();
+        for (int w = 0; w < walls.size(); w++) {
+            MapWall wall = walls.get(w);
+            if (!shouldUpdate.test(wall)) continue;
+            long signature = signature(wall, snapshot, stamps, includeY, trails);
+            if (signature == wallSignatures[w]) continue;
+
+            wallSignatures[w] = signature;
+            for (int i = 0; i < wall.size(); i++) {
+                MapArea tile = wall.tileAt(i);
+                if (tile != null) maps.get(tile.mapId).version++;
+            }
+        }
+    }
+
+    // Rebuilds the wall layout if maps were added or a tracked map's world has loaded since the last build.
+    private void refreshLayout() {
+        for (Tracked tracked : maps.values()) {
+            if (tracked.area == null) {
+                tracked.area = MapArea.of(tracked.view);
+                if (tracked.area != null) layoutDirty = true;
+            }
+        }
+        if (!layoutDirty) return;
+        layoutDirty = false;
+
+        List<MapArea> areas = new ArrayList<>();
+        for (Tracked tracked : maps.values()) {
+            if (tracked.area != null) areas.add(tracked.area);
+        }
+        walls = MapWall.layout(areas);
+        for (MapWall wall : walls) {
+            for (int i = 0; i < wall.size(); i++) {
+                MapArea tile = wall.tileAt(i);
+                if (tile == null) continue;
+                Tracked tracked = maps.get(tile.mapId);
+                tracked.wall = wall;
+                tracked.tileIndex = i;
+            }
+        }
+        // Fresh signatures, so every tile of a rebuilt wall is redrawn once.
+        wallSignatures = new long[walls.size()];
+        Arrays.fill(wallSignatures, Long.MIN_VALUE);
+    }
+
+    /**
+     * Starts a refresh pass: every map changed since the previous pass is marked for this one.
+     */
+    void beginRefreshPass() {
+        refreshPass++;
+        for (Tracked tracked : maps.values()) {
+            if (tracked.version != tracked.sentVersion) {
+                tracked.sentVersion = tracked.version;
+                tracked.refreshPass = refreshPass;
+            }
+        }
+    }
+
+    // True if the map changed since the pass before the current one. Untracked maps are always refreshed.
+    boolean isInRefreshPass(int mapId) {
+        Tracked tracked = maps.get(mapId);
+        return tracked == null || tracked.refreshPass == refreshPass;
+    }
+
+    private long signature(MapWall wall, PlayerSnapshot snapshot, CursorStamps stamps, boolean includeY,
+                           TrailHistory.Frame trails) {
+        int count = wall.collect(snapshot, nearbyPlayers);
+
+        // Order-independent sum, so the player order inside the snapshot does not matter.
+        long signature = mix(settingsEpoch) + count;
+        for (int i = 0; i < count; i++) {
+            int target = nearbyPlayers[i];
+            // Trails reach past their player's tile, so the trail of every nearby player counts, and a trail
+            // fading point by point repaints the wall even while its player stands off the tiles.
+            if (trails != null) {
+                signature += mix(snapshot.playerId(target).hashCode() * 17L + mix(trails.progress(target)));
+            }
+            int wallX = wall.pixelX(snapshot.blockX(target));
+            int wallZ = wall.pixelZ(snapshot.blockZ(target));
+            if (!wall.hasTileAt(wallX, wallZ)) continue;
+
+            long position = ((long) wallX << 32) | (wallZ & 0xFFFFFFFFL);
+            long state = ((long) stamps.bucketFor(snapshot.yaw(target)) << 32)
+                    | (includeY ? (snapshot.blockY(target) & 0xFFFFFFFFL) : 0L);
+            signature += mix(snapshot.playerId(target).hashCode() * 31L + (mix(position) ^ mix(state + 1)));
+        }
+        return signature;
+    }
+
+    // SplitMix64 finalizer.
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Tracked {
+        final MapView view;
+        MapArea area;
+        MapWall wall;
+        int tileIndex = -1;
+        int version = 0;
+        int sentVersion = -1;
+        int refreshPass = 0;
+
+        Tracked(MapView view) {
+            this.view = view;
+            this.area = MapArea.of(view);
+        }
+    }
+}
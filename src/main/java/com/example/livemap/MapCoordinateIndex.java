@@ -0,0 +1,222 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-world index of generated maps: packed (centerX, centerZ, scale) keys to map IDs.
+ * Changes are written behind to the data folder, so the grid GUI remembers existing tiles across
+ * reloads and restarts. Main thread only, except for the background write of an immutable copy.
+ */
+final class MapCoordinateIndex {
+
+    private static final int MAGIC = 0x4C4D4349; // "LMCI"
+    private static final int VERSION = 1;
+
+    // Delay before a change is written, so a burst of grid clicks becomes one write.
+    private static final long WRITE_BEHIND_TICKS = 100L;
+
+    private static final int MAX_SCALE = 4;
+
+    private final Plugin plugin;
+    private final File file;
+
+    private final Map<UUID, LongIntMap> worlds = new HashMap<>();
+    private int creationCounter = 0;
+    private boolean saveScheduled = false;
+    // Number of the latest serialized copy (main thread), and of the latest one on disk (guarded by this).
+    private long serializedCount = 0;
+    private long writtenCount = 0;
+
+    MapCoordinateIndex(Plugin plugin, File file) {
+        this.plugin = plugin;
+        this.file = file;
+    }
+
+    /**
+     * Packs a map center and scale. 29 bits per coordinate covers the whole +-30M world border.
+     */
+    static long key(int centerX, int centerZ, int scale) {
+        return ((long) (centerX & 0x1FFFFFFF) << 32) | ((long) (centerZ & 0x1FFFFFFF) << 3) | (scale & 0x7);
+    }
+
+    /**
+     * Map ID of the map at this exact center and scale, or -1.
+     */
+    int get(UUID worldId, int centerX, int centerZ, int scale) {
+        LongIntMap maps = worlds.get(worldId);
+        return maps == null ? -1 : maps.get(key(centerX, centerZ, scale), -1);
+    }
+
+    boolean contains(UUID worldId, int centerX, int centerZ, int scale) {
+        return get(worldId, centerX, centerZ, scale) != -1;
+    }
+
+    void put(UUID worldId, int centerX, int centerZ, int scale, int mapId) {
+        worlds.computeIfAbsent(worldId, w -> new LongIntMap()).put(key(centerX, centerZ, scale), mapId);
+        scheduleSave();
+    }
+
+    /**
+     * Map ID of the grid-aligned tile next to the given one, offset by whole tiles, or -1.
+     */
+    int neighbor(UUID worldId, int centerX, int centerZ, int scale, int tilesX, int tilesZ) {
+        int area = 128 << scale;
+        return get(worldId, centerX + tilesX * area, centerZ + tilesZ * area, scale);
+    }
+
+    /**
+     * IDs of the grid-aligned maps at each scale whose area contains the block; -1 where there is none.
+     * One lookup per scale, so this is constant time.
+     */
+    int[] mapsCovering(UUID worldId, int blockX, int blockZ) {
+        int[] result = new int[MAX_SCALE + 1];
+        for (int scale = 0; scale <= MAX_SCALE; scale++) {
+            int area = 128 << scale;
+            int centerX = Math.floorDiv(blockX, area) * area + area / 2;
+            int centerZ = Math.floorDiv(blockZ, area) * area + area / 2;
+            result[scale] = get(worldId, centerX, centerZ, scale);
+        }
+        return result;
+    }
+
+    // Increments and returns the number used in "Live Map #N" names.
+    int nextCreationNumber() {
+        creationCounter++;
+        scheduleSave();
+        return creationCounter;
+    }
+
+    int size() {
+        int total = 0;
+        for (LongIntMap maps : worlds.values()) total += maps.size();
+        return total;
+    }
+
+    void load() {
+        worlds.clear();
+        creationCounter = 0;
+        if (!file.isFile()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                plugin.getLogger().warning("Ignoring " + file.getName() + ": unknown format.");
+                return;
+            }
+            creationCounter = in.readInt();
+            int worldCount = in.readInt();
+            for (int w = 0; w < worldCount; w++) {
+                UUID worldId = new UUID(in.readLong(), in.readLong());
+                int count = in.readInt();
+                LongIntMap maps = new LongIntMap(count);
+                for (int i = 0; i < count; i++) {
+                    long key = in.readLong();
+                    maps.put(key, in.readInt());
+                }
+                worlds.put(worldId, maps);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to read " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled || !plugin.isEnabled()) return;
+        saveScheduled = true;
+        Bukkit.getScheduler().runTaskLater(plugin, () -> {
+            saveScheduled = false;
+            byte[] data = serialize();
+            long number = serializedCount;
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> write(data, number));
+        }, WRITE_BEHIND_TICKS);
+    }
+
+    /**
+     * Writes any pending changes immediately. Used on disable, when scheduled tasks no longer run.
+     * Waits for a background write still in progress; one that has not started yet is skipped later.
+     */
+    void saveNow() {
+        saveScheduled = false;
+        byte[] data = serialize();
+        write(data, serializedCount);
+    }
+
+    private byte[] serialize() {
+        serializedCount++;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(creationCounter);
+            out.writeInt(worlds.size());
+            for (Map.Entry<UUID, LongIntMap> entry : worlds.entrySet()) {
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                LongIntMap maps = entry.getValue();
+                out.writeInt(maps.size());
+                for (int slot = 0; slot < maps.capacity(); slot++) {
+                    if (!maps.isUsed(slot)) continue;
+                    out.writeLong(maps.keyAt(slot));
+                    out.writeInt(maps.valueAt(slot));
+                }
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw.
+        }
+        return bytes.toByteArray();
+    }
+
+    // Writes are serialized, and a copy older than the one already on disk is dropped instead of written.
+    private synchronized void write(byte[] data, long number) {
+        if (number <= writtenCount) return;
+        writtenCount = number;
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            plugin.getLogger().warning("Failed to create " + parent.getPath() + " for the map index.");
+            return;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            out.write(data);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to write " + temp.getName() + ": " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to replace " + file.getName() + ": " + e.getMessage());
+        }
+    }
+}
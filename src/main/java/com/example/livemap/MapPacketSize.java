@@ -0,0 +1,66 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Estimated size of the map data packets that canvas updates cause, before compression. The server sends the
+ * bounding box of the pixels that changed since the previous packet, and resends the whole cursor list a few
+ * times a second whether it changed or not. Used for the bandwidth figures in /livemap stats.
+ */
+final class MapPacketSize {
+
+    // Packet id, map id, scale, locked flag, cursor list flag and pixel patch flag.
+    static final int HEADER_BYTES = 8;
+
+    // The server puts the cursor list into every fifth map packet of a viewer, which comes down to four a second.
+    static final int CURSOR_RESENDS_PER_SECOND = 4;
+
+    // Patch width, height, left and top.
+    private static final int PATCH_HEADER_BYTES = 4;
+
+    // Type, x, y, direction and caption flag.
+    private static final int CURSOR_BYTES = 5;
+
+    private MapPacketSize() {
+    }
+
+    /**
+     * Bytes of a pixel patch covering the given region, including the packet header; 0 for an empty region.
+     */
+    static int patch(int width, int height) {
+        if (width <= 0 || height <= 0) return 0;
+        int pixels = width * height;
+        return HEADER_BYTES + PATCH_HEADER_BYTES + varInt(pixels) + pixels;
+    }
+
+    // One cursor in the cursor list. The caption travels as a JSON text component.
+    static int cursor(String caption) {
+        if (caption == null) return CURSOR_BYTES;
+        int json = caption.getBytes(StandardCharsets.UTF_8).length + "{\"text\":\"\"}".length();
+        return CURSOR_BYTES + varInt(json) + json;
+    }
+
+    static int varInt(int value) {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,160 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * The set of map IDs that LiveMaps created or adopted, persisted as a small binary file.
+ * Only these maps get a renderer, so startup cost follows the number of live maps instead of every map ID.
+ */
+final class MapRegistry {
+
+    private static final int MAGIC = 0x4C4D4150; // "LMAP"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final Logger logger;
+
+    // Sorted, duplicate-free map IDs.
+    private int[] ids = new int[0];
+
+    MapRegistry(File file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+    }
+
+    /**
+     * Loads the registry from disk. Returns false if no registry file exists yet.
+     */
+    boolean load() {
+        ids = new int[0];
+        if (!file.isFile()) return false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                logger.warning("Ignoring " + file.getName() + ": not a LiveMaps registry file.");
+                return true;
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                logger.warning("Ignoring " + file.getName() + ": unsupported version " + version + ".");
+                return true;
+            }
+            int count = in.readInt();
+            int[] loaded = new int[count];
+            for (int i = 0; i < count; i++) {
+                loaded[i] = in.readInt();
+            }
+            Arrays.sort(loaded);
+            ids = loaded;
+        } catch (IOException e) {
+            logger.warning("Failed to read " + file.getName() + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Writes the registry through a temporary file so a crash never leaves a truncated registry behind.
+     */
+    void save() {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            logger.warning("Failed to create " + parent.getPath() + " for the map registry.");
+            return;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.length);
+            for (int id : ids) {
+                out.writeInt(id);
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to write " + temp.getName() + ": " + e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Failed to replace " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    boolean contains(int mapId) {
+        return Arrays.binarySearch(ids, mapId) >= 0;
+    }
+
+    /**
+     * Adds a map ID and saves the registry. Returns false if it was already registered.
+     */
+    boolean add(int mapId) {
+        int slot = Arrays.binarySearch(ids, mapId);
+        if (slot >= 0) return false;
+
+        int insert = -slot - 1;
+        int[] grown = new int[ids.length + 1];
+        System.arraycopy(ids, 0, grown, 0, insert);
+        grown[insert] = mapId;
+        System.arraycopy(ids, insert, grown, insert + 1, ids.length - insert);
+        ids = grown;
+        save();
+        return true;
+    }
+
+    /**
+     * Adds several map IDs and saves once. Returns how many were not registered before.
+     */
+    int addAll(int[] mapIds) {
+        int before = ids.length;
+        int[] merged = Arrays.copyOf(ids, ids.length + mapIds.length);
+        System.arraycopy(mapIds, 0, merged, ids.length, mapIds.length);
+        Arrays.sort(merged);
+
+        int unique = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (unique == 0 || merged[i] != merged[unique - 1]) {
+                merged[unique++] = merged[i];
+            }
+        }
+        ids = Arrays.copyOf(merged, unique);
+        save();
+        return unique - before;
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    // A copy of the registered IDs in ascending order.
+    int[] toArray() {
+        return ids.clone();
+    }
+}
@@ -0,0 +1,124 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.entity.Player;
+import org.bukkit.map.MapCanvas;
+import org.bukkit.map.MapPalette;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * The work of one live map render call: swaps in the newest composed overlay and base layer when either
+ * changed, repaints the canvas and accounts for the update. The plugin state it reads comes through a
+ * {@link Context}, so benchmarks run the same code without a server. Main thread only.
+ */
+final class MapRenderPass {
+
+    /**
+     * The plugin state a render reads.
+     */
+    interface Context {
+        // Null while composition is stopped.
+        CompositionPipeline composition();
+
+        BaseLayerStore baseLayers();
+
+        // The heatmap store while the heatmap is shown, otherwise null.
+        HeatmapStore heatmaps();
+
+        boolean isUpdateDeferred(int mapId, Player contextualViewer, boolean pending);
+
+        // Recomposes the viewer's delta on a contextual canvas; true if it looks different.
+        boolean composeViewerDelta(int mapId, Player viewer, ViewerCanvas state);
+
+        UUID[] viewerIds(int mapId);
+
+        PerformanceMetrics metrics();
+
+        BandwidthBudget bandwidth();
+
+        void cursorListSent(int mapId, int bytes);
+    }
+
+    private final Context context;
+
+    // Base layer with the heatmap painted over it, rebuilt whenever a canvas repaints its base.
+    private final byte[] baseScratch = new byte[BaseLayerStore.SLOT_SIZE];
+
+    MapRenderPass(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Renders one canvas of the map.
+     *
+     * @param contextualViewer the viewer of a contextual canvas, or null for the shared canvas
+     */
+    void render(int mapId, MapCanvas canvas, ViewerCanvas state, Player contextualViewer) {
+        // Overlays are composed off the main thread; here we only swap in a newer one when it is ready.
+        CompositionPipeline composition = context.composition();
+        if (composition == null) return;
+
+        CompositionPipeline.Composed composed = composition.latest(mapId);
+        HeatmapStore heatmaps = context.heatmaps();
+        byte[] heat = heatmaps != null ? heatmaps.image(mapId) : null;
+        BaseLayerStore baseLayers = context.baseLayers();
+        int baseRevision = baseLayers.revision(mapId);
+        if (heat != null) {
+            // The heatmap is painted over the terrain, so either one changing repaints the base.
+            baseRevision ^= heatmaps.revision(mapId) * 0x9E3779B9;
+        }
+        boolean overlayChanged = composed != null && composed.version != state.renderedVersion;
+        // Held back while a viewer is over budget; the canvas catches up in one repaint once nobody is.
+        boolean pending = overlayChanged || baseRevision != state.renderedBaseRevision;
+        if (context.isUpdateDeferred(mapId, contextualViewer, pending)) return;
+        boolean deltaChanged = contextualViewer != null && context.composeViewerDelta(mapId, contextualViewer, state);
+        if (!overlayChanged && !deltaChanged && baseRevision == state.renderedBaseRevision) return;
+        long started = System.nanoTime();
+
+        boolean baseChanged = baseRevision != state.renderedBaseRevision;
+        state.renderedBaseRevision = baseRevision;
+        byte[] base = null;
+        if (baseChanged) {
+            boolean hasTerrain = baseLayers.read(mapId, baseScratch);
+            if (heat != null) {
+                if (!hasTerrain) Arrays.fill(baseScratch, MapPalette.TRANSPARENT);
+                HeatmapStore.paint(heat, baseScratch);
+                base = baseScratch;
+            } else if (hasTerrain) {
+                base = baseScratch;
+            }
+        }
+        if (composed != null) {
+            state.renderedVersion = composed.version;
+        }
+        int pixels = state.repaint(canvas, baseChanged, base, composed == null ? null : composed.layer,
+                contextualViewer != null ? state.delta : null);
+
+        PerformanceMetrics metrics = context.metrics();
+        metrics.recordSince(PerformanceMetrics.Timer.RENDER, started);
+        metrics.add(PerformanceMetrics.Counter.PIXELS_WRITTEN, pixels);
+        metrics.add(PerformanceMetrics.Counter.MAPS_RENDERED, 1);
+
+        // A shared canvas update goes out to everyone who sees the map, a contextual one only to its viewer.
+        UUID[] recipients = contextualViewer != null ? new UUID[] { contextualViewer.getUniqueId() } : context.viewerIds(mapId);
+        metrics.add(PerformanceMetrics.Counter.PIXEL_BYTES, (long) state.patchBytes * recipients.length);
+        context.bandwidth().charge(recipients, state.patchBytes, System.nanoTime());
+        context.cursorListSent(mapId, state.cursorListBytes);
+    }
+}
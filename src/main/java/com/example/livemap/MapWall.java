@@ -0,0 +1,171 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A set of adjacent maps of one scale and world treated as a single logical canvas, such as the tiles
+ * made with the grid GUI. Players are projected once into wall pixels, and every icon and label is drawn
+ * once and split across the tiles it overlaps. A map that is not part of a larger wall is a 1x1 wall.
+ */
+final class MapWall {
+
+    final UUID worldId;
+    final int scaleFactor;
+    // North-west corner of the wall in block coordinates.
+    final int originX;
+    final int originZ;
+    final int tilesWide;
+    final int tilesHigh;
+
+    // Row-major, tilesWide x tilesHigh; null where the wall has a hole.
+    private final MapArea[] tiles;
+
+    private MapWall(UUID worldId, int scaleFactor, int originX, int originZ, int tilesWide, int tilesHigh, MapArea[] tiles) {
+        this.worldId = worldId;
+        this.scaleFactor = scaleFactor;
+        this.originX = originX;
+        this.originZ = originZ;
+        this.tilesWide = tilesWide;
+        this.tilesHigh = tilesHigh;
+        this.tiles = tiles;
+    }
+
+    static MapWall single(MapArea area) {
+        return new MapWall(area.worldId, area.scaleFactor, area.originX(), area.originZ(), 1, 1, new MapArea[] { area });
+    }
+
+    // Number of tile slots, including holes.
+    int size() {
+        return tiles.length;
+    }
+
+    // Tile at a slot index (tileZ * tilesWide + tileX), or null for a hole.
+    MapArea tileAt(int index) {
+        return tiles[index];
+    }
+
+    // Wall pixel column of a block X.
+    int pixelX(int blockX) {
+        return Math.floorDiv(blockX - originX, scaleFactor);
+    }
+
+    int pixelZ(int blockZ) {
+        return Math.floorDiv(blockZ - originZ, scaleFactor);
+    }
+
+    /**
+     * True if the wall pixel lies on one of the wall's maps rather than outside it or in a hole.
+     */
+    boolean hasTileAt(int wallX, int wallZ) {
+        if (wallX < 0 || wallZ < 0) return false;
+        int tileX = wallX >> 7;
+        int tileZ = wallZ >> 7;
+        return tileX < tilesWide && tileZ < tilesHigh && tiles[tileZ * tilesWide + tileX] != null;
+    }
+
+    /**
+     * Collects the snapshot players inside the wall's bounding box.
+     */
+    int collect(PlayerSnapshot snapshot, int[] out) {
+        int blocksPerTile = scaleFactor * 128;
+        return snapshot.collect(worldId, originX, originZ,
+                originX + tilesWide * blocksPerTile - 1, originZ + tilesHigh * blocksPerTile - 1, out);
+    }
+
+    /**
+     * Groups map areas into walls: grid-aligned maps of the same world and scale that touch along an
+     * edge form one wall. Unaligned maps, and duplicates of a tile that is already taken, stay on their own.
+     */
+    static List<MapWall> layout(Collection<MapArea> areas) {
+        List<MapWall> walls = new ArrayList<>();
+        Map<UUID, Map<Integer, Map<Long, MapArea>>> grids = new HashMap<>();
+
+        for (MapArea area : areas) {
+            if (!area.isGridAligned()) {
+                walls.add(single(area));
+                continue;
+            }
+            Map<Long, MapArea> grid = grids.computeIfAbsent(area.worldId, w -> new HashMap<>())
+                    .computeIfAbsent(area.scaleFactor, s -> new HashMap<>());
+            if (grid.putIfAbsent(tileKey(area.tileX(), area.tileZ()), area) != null) {
+                walls.add(single(area));
+            }
+        }
+
+        for (Map<Integer, Map<Long, MapArea>> byScale : grids.values()) {
+            for (Map<Long, MapArea> grid : byScale.values()) {
+                walls.addAll(components(grid));
+            }
+        }
+        return walls;
+    }
+
+    // Flood-fills the tile grid of one world and scale into connected walls.
+    private static List<MapWall> components(Map<Long, MapArea> grid) {
+        List<MapWall> walls = new ArrayList<>();
+        Map<Long, MapArea> remaining = new HashMap<>(grid);
+
+        while (!remaining.isEmpty()) {
+            MapArea seed = remaining.values().iterator().next();
+            List<MapArea> members = new ArrayList<>();
+            Deque<MapArea> queue = new ArrayDeque<>();
+            queue.add(seed);
+            remaining.remove(tileKey(seed.tileX(), seed.tileZ()));
+
+            int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+            while (!queue.isEmpty()) {
+                MapArea area = queue.poll();
+                members.add(area);
+                int tx = area.tileX();
+                int tz = area.tileZ();
+                minX = Math.min(minX, tx);
+                minZ = Math.min(minZ, tz);
+                maxX = Math.max(maxX, tx);
+                maxZ = Math.max(maxZ, tz);
+
+                int[][] neighbours = { { tx + 1, tz }, { tx - 1, tz }, { tx, tz + 1 }, { tx, tz - 1 } };
+                for (int[] n : neighbours) {
+                    MapArea next = remaining.remove(tileKey(n[0], n[1]));
+                    if (next != null) queue.add(next);
+                }
+            }
+
+            int wide = maxX - minX + 1;
+            int high = maxZ - minZ + 1;
+            MapArea[] tiles = new MapArea[wide * high];
+            for (MapArea area : members) {
+                tiles[(area.tileZ() - minZ) * wide + (area.tileX() - minX)] = area;
+            }
+            int blocksPerTile = seed.blockArea();
+            walls.add(new MapWall(seed.worldId, seed.scaleFactor, minX * blocksPerTile, minZ * blocksPerTile, wide, high, tiles));
+        }
+        return walls;
+    }
+
+    private static long tileKey(int tileX, int tileZ) {
+        return ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,104 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.map.MapCanvas;
+
+/**
+ * Undo log for the pixels a renderer draws over the map background.
+ * The first write to a pixel saves the background underneath it, and {@link #restore(MapCanvas)}
+ * puts every saved pixel back. Storage is fixed-size, so drawing and restoring never allocate.
+ */
+final class OverlayBuffer {
+
+    static final int SIZE = 128;
+
+    // Background byte for every pixel; only meaningful where the dirty bit is set.
+    private final byte[] savedBackground = new byte[SIZE * SIZE];
+
+    // One bit per pixel, two 64-bit words per row.
+    private final long[] dirty = new long[SIZE * SIZE / 64];
+
+    // Bounding box of the dirty pixels, inclusive. Empty when maxY < minY.
+    private int minX = SIZE;
+    private int minY = SIZE;
+    private int maxX = -1;
+    private int maxY = -1;
+
+    /**
+     * Writes a pixel, saving the background first if this pixel has not been drawn since the last restore.
+     * Out-of-bounds coordinates are ignored.
+     */
+    void setPixel(MapCanvas canvas, int x, int y, byte colorId) {
+        if (x < 0 || x >= SIZE || y < 0 || y >= SIZE) return;
+
+        int index = (y << 7) | x;
+        int word = index >>> 6;
+        long bit = 1L << index;
+        if ((dirty[word] & bit) == 0) {
+            dirty[word] |= bit;
+            savedBackground[index] = canvas.getPixel(x, y);
+
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+        canvas.setPixel(x, y, colorId);
+    }
+
+    /**
+     * Puts the saved background back on every dirty pixel and clears the log.
+     * Only rows and words inside the dirty bounding box are visited. Returns the number of pixels restored.
+     */
+    int restore(MapCanvas canvas) {
+        if (isEmpty()) return 0;
+
+        int restored = 0;
+
+        int firstWord = minX >>> 6;
+        int lastWord = maxX >>> 6;
+        for (int y = minY; y <= maxY; y++) {
+            int rowWord = y << 1;
+            for (int word = rowWord + firstWord; word <= rowWord + lastWord; word++) {
+                long bits = dirty[word];
+                while (bits != 0) {
+                    int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                    canvas.setPixel(index & (SIZE - 1), index >>> 7, savedBackground[index]);
+                    restored++;
+                    bits &= bits - 1;
+                }
+                dirty[word] = 0L;
+            }
+        }
+
+        minX = SIZE;
+        minY = SIZE;
+        maxX = -1;
+        maxY = -1;
+        return restored;
+    }
+
+    boolean isEmpty() {
+        return maxY < minY;
+    }
+
+    // Dirty bounding box, inclusive. Only valid when the buffer is not empty.
+    int getDirtyMinX() { return minX; }
+    int getDirtyMinY() { return minY; }
+    int getDirtyMaxX() { return maxX; }
+    int getDirtyMaxY() { return maxY; }
+}
@@ -0,0 +1,394 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.map.MapCursor;
+
+import java.util.Arrays;
+
+/**
+ * Draws the player overlay of one wall (cursors, Y labels and name labels) onto the {@link OverlayLayer}s of its tiles.
+ * In native cursor mode players become vanilla map cursors with their name as caption, and only the extras are pixels.
+ * Holds the display settings of one snapshot and only reads immutable inputs, so it is safe to run on worker threads.
+ * Not final, so tests can stand in a composer that fails.
+ */
+class OverlayComposer {
+
+    static final byte DIRECTION_LINE_COLOR_ID = 119;
+    static final byte LABEL_BACKGROUND_COLOR_ID = 119;
+    static final byte NAME_COLOR_ID = 34;
+    static final byte HIGHLIGHT_COLOR_ID = 34;
+    static final byte CLUSTER_RING_COLOR_ID = 119;
+    static final byte CLUSTER_FILL_COLOR_ID = 34;
+
+    // Pixels an icon reaches from its center; a cluster's ring adds one.
+    private static final int ICON_EXTENT = 4;
+
+    // Per-thread scratch buffer for the snapshot query, grown to the snapshot size when needed.
+    private static final ThreadLocal<int[]> NEARBY_PLAYERS = ThreadLocal.withInitial(() -> new int[0]);
+
+    // Per-thread cluster and label placement scratch.
+    private static final ThreadLocal<OverlayLayout> LAYOUT = ThreadLocal.withInitial(OverlayLayout::new);
+
+    // Per-thread remaining trail pixels of each wall tile.
+    private static final ThreadLocal<int[]> TRAIL_BUDGET = ThreadLocal.withInitial(() -> new int[0]);
+
+    // Trail shades from newest to oldest: bright, normal, dark, darkest.
+    private static final int[] TRAIL_SHADES = {2, 1, 0, 3};
+
+    // Longer trail steps are teleports and are not connected.
+    private static final int MAX_TRAIL_STEP_PIXELS = 32;
+
+    private final byte[] playerColorIds;
+    private final LabelCache labelCache;
+    private final CursorStamps cursorStamps;
+    private final boolean showPlayerNames;
+    private final boolean showYLevel;
+    private final TrailHistory.Frame trails;
+    private final int trailGeneration;
+    private final int trailPixelsPerMap;
+    private final int clusterRadius;
+    private final boolean declutterLabels;
+    private final boolean nativeCursors;
+
+    /**
+     * @param trails player trails as of the snapshot being composed, or null to draw none
+     * @param trailPixelsPerMap most trail pixels drawn on one map
+     * @param clusterRadius players closer than this many pixels are drawn as one cluster; 0 draws everyone
+     * @param declutterLabels whether labels that would overlap an icon or another label are left out
+     * @param nativeCursors whether players are vanilla map cursors instead of pixel icons and name labels
+     */
+    OverlayComposer(byte[] playerColorIds, LabelCache labelCache, CursorStamps cursorStamps,
+                    boolean showPlayerNames, boolean showYLevel, TrailHistory.Frame trails, int trailPixelsPerMap,
+                    int clusterRadius, boolean declutterLabels, boolean nativeCursors) {
+        this.playerColorIds = playerColorIds;
+        this.labelCache = labelCache;
+        this.cursorStamps = cursorStamps;
+        this.showPlayerNames = showPlayerNames;
+        this.showYLevel = showYLevel;
+        this.trails = trails;
+        this.trailGeneration = trails == null ? 0 : trails.generation();
+        this.trailPixelsPerMap = trailPixelsPerMap;
+        this.clusterRadius = clusterRadius;
+        this.declutterLabels = declutterLabels;
+        this.nativeCursors = nativeCursors;
+    }
+
+    /**
+     * Clears the canvas and draws every snapshot player standing on one of the wall's tiles. Each player
+     * is projected once into wall pixels; icons and labels near a tile edge continue onto the next tile.
+     * Returns the number of players drawn, or -1 if the trail frame was recorded over meanwhile and the
+     * canvas must not be shown.
+     */
+    int compose(PlayerSnapshot snapshot, MapWall wall, WallCanvas layer) {
+        layer.clear();
+
+        int[] nearbyPlayers = NEARBY_PLAYERS.get();
+        if (nearbyPlayers.length < snapshot.size()) {
+            nearbyPlayers = new int[snapshot.size()];
+            NEARBY_PLAYERS.set(nearbyPlayers);
+        }
+
+        int count = wall.collect(snapshot, nearbyPlayers);
+        if (trails != null && trailPixelsPerMap > 0) {
+            drawTrails(layer, snapshot, wall, nearbyPlayers, count);
+            if (!trails.isRecorded(trailGeneration)) return -1;
+        }
+
+        if (clusterRadius > 0 || declutterLabels) {
+            return drawLayout(layer, snapshot, wall, nearbyPlayers, count);
+        }
+
+        int drawn = 0;
+        for (int i = 0; i < count; i++) {
+            if (drawPlayer(layer, snapshot, wall, nearbyPlayers[i], false)) drawn++;
+        }
+        return drawn;
+    }
+
+    /**
+     * Crowd-aware drawing. Players within the cluster radius of each other become one cluster icon with
+     * a count badge, every icon is drawn before any label, and a label is only drawn where it does not
+     * collide with an icon or an earlier label. The icons on a map are bounded by how many clusters fit
+     * on it and the labels by the free space, however many players stand there. Returns the players on the wall.
+     */
+    private int drawLayout(WallCanvas layer, PlayerSnapshot snapshot, MapWall wall, int[] players, int count) {
+        OverlayLayout layout = LAYOUT.get();
+        layout.reset(wall.tilesWide * OverlayLayer.SIZE, wall.tilesHigh * OverlayLayer.SIZE, clusterRadius);
+
+        int drawn = 0;
+        for (int i = 0; i < count; i++) {
+            int target = players[i];
+            if (!onWall(snapshot, wall, target)) continue;
+            layout.add(target, wall.pixelX(snapshot.blockX(target)), wall.pixelZ(snapshot.blockZ(target)));
+            drawn++;
+        }
+
+        for (int c = 0; c < layout.clusterCount(); c++) {
+            int target = layout.leader(c);
+            int x = layout.x(c);
+            int z = layout.z(c);
+            int extent = ICON_EXTENT;
+            if (layout.members(c) == 1) {
+                drawIcon(layer, snapshot, target, x, z, false);
+            } else if (nativeCursors) {
+                layer.addCursor(x, z, 0f, CursorList.CLUSTER_TYPE, String.valueOf(layout.members(c)));
+            } else {
+                drawClusterIcon(layer, x, z);
+                extent++;
+            }
+            layout.occupy(x - extent, z - extent, 2 * extent + 1, 2 * extent + 1);
+        }
+
+        OverlayLayout labels = declutterLabels ? layout : null;
+        // Count badges first: they say the most about a crowd. Native cluster cursors carry the count as caption.
+        for (int c = 0; c < layout.clusterCount(); c++) {
+            if (layout.members(c) == 1 || nativeCursors) continue;
+            LabelCache.Label badge = labelCache.getNumber(layout.members(c));
+            drawLabel(layer, labels, layout.x(c) - badge.width / 2, layout.z(c) - 8 - badge.height, badge, NAME_COLOR_ID);
+        }
+        for (int c = 0; c < layout.clusterCount(); c++) {
+            if (layout.members(c) != 1) continue;
+            drawLabels(layer, labels, snapshot, layout.leader(c), layout.x(c), layout.z(c));
+        }
+        return drawn;
+    }
+
+    // A ring around a plain body, so a cluster is not mistaken for a single player.
+    private void drawClusterIcon(WallCanvas layer, int centerX, int centerY) {
+        byte[] body = cursorStamps.body();
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                if (dx != 0 || dz != 0) stamp(layer, centerX + dx, centerY + dz, body, CLUSTER_RING_COLOR_ID);
+            }
+        }
+        stamp(layer, centerX, centerY, body, CLUSTER_FILL_COLOR_ID);
+    }
+
+    /**
+     * Draws one viewer's delta for one tile of a wall: the players only that viewer may see, and the
+     * viewer's own cursor with a highlight ring on top. The canvas has a layer only for that tile, see
+     * {@link ViewerCanvas#deltaCanvas}, so pixels outside the tile are dropped.
+     * Returns a signature of what was drawn, so callers can tell whether the delta actually changed.
+     */
+    long composeViewer(PlayerSnapshot snapshot, MapWall wall, long[] extras, int viewerIndex, WallCanvas canvas) {
+        canvas.clear();
+
+        long signature = 0L;
+        if (extras != null) {
+            for (int word = 0; word < extras.length; word++) {
+                long bits = extras[word];
+                while (bits != 0) {
+                    int target = (word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (drawPlayer(canvas, snapshot, wall, target, false)) {
+                        signature += playerSignature(snapshot, wall, target);
+                    }
+                }
+            }
+        }
+
+        if (viewerIndex >= 0 && onWall(snapshot, wall, viewerIndex)) {
+            int mapX = wall.pixelX(snapshot.blockX(viewerIndex));
+            int mapZ = wall.pixelZ(snapshot.blockZ(viewerIndex));
+            if (!nativeCursors) {
+                byte[] body = cursorStamps.body();
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        if (dx != 0 || dz != 0) stamp(canvas, mapX + dx, mapZ + dz, body, HIGHLIGHT_COLOR_ID);
+                    }
+                }
+            }
+            drawPlayer(canvas, snapshot, wall, viewerIndex, true);
+            signature += MapChangeTracker.mix(playerSignature(snapshot, wall, viewerIndex));
+        }
+        return signature;
+    }
+
+    private static boolean onWall(PlayerSnapshot snapshot, MapWall wall, int target) {
+        return snapshot.worldId(target).equals(wall.worldId)
+                && wall.hasTileAt(wall.pixelX(snapshot.blockX(target)), wall.pixelZ(snapshot.blockZ(target)));
+    }
+
+    private long playerSignature(PlayerSnapshot snapshot, MapWall wall, int target) {
+        long position = ((long) wall.pixelX(snapshot.blockX(target)) << 32) | (wall.pixelZ(snapshot.blockZ(target)) & 0xFFFFFFFFL);
+        long state = ((long) cursorStamps.bucketFor(snapshot.yaw(target)) << 32) | (snapshot.blockY(target) & 0xFFFFFFFFL);
+        return MapChangeTracker.mix(snapshot.playerId(target).hashCode() * 31L + (MapChangeTracker.mix(position) ^ MapChangeTracker.mix(state + 1)));
+    }
+
+    // Draws the player's cursor and labels if they stand on one of the wall's tiles. Returns whether they did.
+    private boolean drawPlayer(WallCanvas layer, PlayerSnapshot snapshot, MapWall wall, int target, boolean viewer) {
+        if (!onWall(snapshot, wall, target)) return false;
+
+        int mapX = wall.pixelX(snapshot.blockX(target));
+        int mapZ = wall.pixelZ(snapshot.blockZ(target));
+
+        drawIcon(layer, snapshot, target, mapX, mapZ, viewer);
+
+        drawLabels(layer, null, snapshot, target, mapX, mapZ);
+        return true;
+    }
+
+    // A vanilla cursor captioned with the name in native mode, otherwise the pixel icon in the player's color.
+    private void drawIcon(WallCanvas layer, PlayerSnapshot snapshot, int target, int mapX, int mapZ, boolean viewer) {
+        float yaw = snapshot.yaw(target);
+        if (nativeCursors) {
+            MapCursor.Type type = viewer ? CursorList.VIEWER_TYPE : CursorList.playerType(snapshot.colorIndex(target));
+            String name = snapshot.name(target);
+            layer.addCursor(mapX, mapZ, yaw, type, showPlayerNames && name != null && !name.isEmpty() ? name : null);
+        } else {
+            drawLargeIcon(layer, mapX, mapZ, yaw, playerColorIds[snapshot.colorIndex(target)], DIRECTION_LINE_COLOR_ID);
+        }
+    }
+
+    // Y label above the icon and name label below it, as enabled; native cursors show the name themselves.
+    // With a layout, colliding labels are left out.
+    private void drawLabels(WallCanvas layer, OverlayLayout layout, PlayerSnapshot snapshot, int target, int mapX, int mapZ) {
+        if (showPlayerNames || showYLevel) {
+            if (showYLevel) {
+                int yLevel = snapshot.blockY(target);
+                LabelCache.Label yLabel = labelCache.getNumber(yLevel);
+                byte textColorID;
+                if (yLevel > 100) {
+                    textColorID = (byte) 54;
+                } else if (yLevel >= 54) {
+                    textColorID = (byte) 86;
+                } else {
+                    textColorID = (byte) 114;
+                }
+
+                int yTextX = mapX - (yLabel.width / 2);
+                int yTextY = mapZ - 8 - yLabel.height;
+                drawLabel(layer, layout, yTextX, yTextY, yLabel, textColorID);
+            }
+
+            if (showPlayerNames && !nativeCursors) {
+                String name = snapshot.name(target);
+                LabelCache.Label nameLabel = (name == null || name.isEmpty()) ? null : labelCache.get(name);
+                if (nameLabel != null) {
+                    int textX = mapX - (nameLabel.width / 2);
+                    int textY = mapZ + 8;
+                    drawLabel(layer, layout, textX, textY, nameLabel, NAME_COLOR_ID);
+                }
+            }
+        }
+    }
+
+    // Text on a background box with a one-pixel margin, unless the layout has no room for it.
+    private void drawLabel(WallCanvas layer, OverlayLayout layout, int x, int y, LabelCache.Label label, byte colorId) {
+        int width = label.width + 2;
+        int height = label.height + 2;
+        if (layout != null && !layout.tryClaim(x - 1, y - 1, width, height)) return;
+
+        drawSmartRectangle(layer, x - 1, y - 1, width, height, LABEL_BACKGROUND_COLOR_ID);
+        drawSmartText(layer, x, y, label, colorId);
+    }
+
+    /**
+     * Draws the trails of the given players underneath their cursors, fading with age. Segments are drawn
+     * newest first and round-robin across players, so when a tile runs out of trail pixels every player
+     * loses their oldest segments rather than one player losing the whole trail.
+     */
+    private void drawTrails(WallCanvas layer, PlayerSnapshot snapshot, MapWall wall, int[] players, int count) {
+        int[] budget = TRAIL_BUDGET.get();
+        if (budget.length < wall.size()) {
+            budget = new int[wall.size()];
+            TRAIL_BUDGET.set(budget);
+        }
+        Arrays.fill(budget, 0, wall.size(), trailPixelsPerMap);
+
+        int length = trails.length();
+        for (int age = 1; age < length; age++) {
+            boolean anyLeft = false;
+            for (int i = 0; i < count; i++) {
+                int target = players[i];
+                if (age >= trails.pointCount(target)) continue;
+                int newer = trails.entry(target, age - 1);
+                int older = trails.entry(target, age);
+                if (newer < 0 || older < 0) continue;
+                anyLeft = true;
+
+                byte playerColor = playerColorIds[snapshot.colorIndex(target)];
+                byte shade = (byte) ((playerColor & 0xFC) | TRAIL_SHADES[Math.min(3, age * 4 / length)]);
+                drawTrailStep(layer, budget,
+                        wall.pixelX(trails.x(newer)), wall.pixelZ(trails.z(newer)),
+                        wall.pixelX(trails.x(older)), wall.pixelZ(trails.z(older)), shade);
+            }
+            if (!anyLeft) break;
+        }
+    }
+
+    // Bresenham line from the newer point (exclusive, it is already covered) to the older one, within each tile's budget.
+    private static void drawTrailStep(WallCanvas layer, int[] budget, int x0, int z0, int x1, int z1, byte colorId) {
+        int dx = Math.abs(x1 - x0);
+        int dz = Math.abs(z1 - z0);
+        if (Math.max(dx, dz) > MAX_TRAIL_STEP_PIXELS) return;
+
+        int stepX = x0 < x1 ? 1 : -1;
+        int stepZ = z0 < z1 ? 1 : -1;
+        int error = dx - dz;
+        int x = x0;
+        int z = z0;
+        while (x != x1 || z != z1) {
+            int doubled = error * 2;
+            if (doubled > -dz) {
+                error -= dz;
+                x += stepX;
+            }
+            if (doubled < dx) {
+                error += dx;
+                z += stepZ;
+            }
+
+            int tile = layer.tileIndexAt(x, z);
+            if (tile < 0 || budget[tile] == 0) continue;
+            budget[tile]--;
+            layer.setPixel(x, z, colorId);
+        }
+    }
+
+    void drawSmartRectangle(WallCanvas layer, int x, int y, int width, int height, byte colorId) {
+        for (int py = y; py < y + height; py++) {
+            for (int px = x; px < x + width; px++) {
+                layer.setPixel(px, py, colorId);
+            }
+        }
+    }
+
+    void drawSmartText(WallCanvas layer, int x, int y, LabelCache.Label label, byte colorId) {
+        long[] mask = label.mask;
+        int maskWidth = label.maskWidth;
+        for (int word = 0; word < mask.length; word++) {
+            long bits = mask[word];
+            while (bits != 0) {
+                int bit = (word << 6) | Long.numberOfTrailingZeros(bits);
+                layer.setPixel(x + bit % maskWidth, y + bit / maskWidth, colorId);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    void drawLargeIcon(WallCanvas layer, int centerX, int centerY, float yaw, byte fillColor, byte lineFillColor) {
+        stamp(layer, centerX, centerY, cursorStamps.body(), fillColor);
+        stamp(layer, centerX, centerY, cursorStamps.direction(cursorStamps.bucketFor(yaw)), lineFillColor);
+    }
+
+    private void stamp(WallCanvas layer, int centerX, int centerY, byte[] offsets, byte colorId) {
+        for (int i = 0; i < offsets.length; i += 2) {
+            layer.setPixel(centerX + offsets[i], centerY + offsets[i + 1], colorId);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.map.MapCanvas;
+
+/**
+ * A composed 128x128 overlay: a color per pixel plus a bit saying whether the pixel is drawn at all, and in
+ * native cursor mode the map cursors of the tile.
+ * Layers are filled off the main thread and then copied onto a canvas through an {@link OverlayBuffer}.
+ */
+final class OverlayLayer {
+
+    static final int SIZE = OverlayBuffer.SIZE;
+
+    private final byte[] colors = new byte[SIZE * SIZE];
+    private final long[] mask = new long[SIZE * SIZE / 64];
+
+    // Vanilla cursors drawn by the client on top of the pixels.
+    final CursorList cursors = new CursorList();
+
+    // Bounding box of the drawn pixels, inclusive. Empty when maxY < minY.
+    private int minX = SIZE;
+    private int minY = SIZE;
+    private int maxX = -1;
+    private int maxY = -1;
+
+    /**
+     * Draws a pixel; later writes to the same pixel win. Out-of-bounds coordinates are ignored.
+     */
+    void setPixel(int x, int y, byte colorId) {
+        if (x < 0 || x >= SIZE || y < 0 || y >= SIZE) return;
+
+        int index = (y << 7) | x;
+        mask[index >>> 6] |= 1L << index;
+        colors[index] = colorId;
+
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+    }
+
+    // Clears the cursors, and only the rows that were drawn on.
+    void clear() {
+        cursors.clear();
+        if (isEmpty()) return;
+        for (int y = minY; y <= maxY; y++) {
+            mask[y << 1] = 0L;
+            mask[(y << 1) + 1] = 0L;
+        }
+        minX = SIZE;
+        minY = SIZE;
+        maxX = -1;
+        maxY = -1;
+    }
+
+    // True if no pixel is drawn; cursors are not counted.
+    boolean isEmpty() {
+        return maxY < minY;
+    }
+
+    /**
+     * Copies every drawn pixel onto the canvas through the buffer, which saves the background underneath.
+     * Returns the number of pixels copied.
+     */
+    int blitTo(OverlayBuffer buffer, MapCanvas canvas) {
+        if (isEmpty()) return 0;
+
+        int copied = 0;
+
+        int firstWord = minX >>> 6;
+        int lastWord = maxX >>> 6;
+        for (int y = minY; y <= maxY; y++) {
+            int rowWord = y << 1;
+            for (int word = rowWord + firstWord; word <= rowWord + lastWord; word++) {
+                long bits = mask[word];
+                while (bits != 0) {
+                    int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                    buffer.setPixel(canvas, index & (SIZE - 1), index >>> 7, colors[index]);
+                    copied++;
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return copied;
+    }
+}
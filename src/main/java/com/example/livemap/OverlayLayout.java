@@ -0,0 +1,170 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.Arrays;
+
+/**
+ * Scratch state of one layout pass over a wall: players merged into clusters through a spatial hash of their
+ * projected positions, and a coarse occupancy grid that labels must find free space in. One instance per
+ * composition thread, reused across passes, so a pass does not allocate once the arrays have grown.
+ */
+final class OverlayLayout {
+
+    // Occupancy is tracked in 2x2 pixel cells: labels sit two pixels off their icon, which must not read as a collision.
+    private static final int OCCUPANCY_SHIFT = 1;
+
+    private final LongIntMap cellHeads = new LongIntMap(64);
+    private int radius;
+
+    // Per cluster: leader player, leader position, member count, next cluster in the same hash cell.
+    private int clusterCount;
+    private int[] leader = new int[16];
+    private int[] leaderX = new int[16];
+    private int[] leaderZ = new int[16];
+    private int[] members = new int[16];
+    private int[] nextInCell = new int[16];
+
+    private int occupancyWidth;
+    private int occupancyHeight;
+    private long[] occupied = new long[0];
+
+    /**
+     * Starts a pass over a wall of the given pixel size.
+     *
+     * @param radius players within this many pixels of a cluster's leader join that cluster; 0 keeps everyone apart
+     */
+    void reset(int wallWidth, int wallHeight, int radius) {
+        this.radius = radius;
+        clusterCount = 0;
+        cellHeads.clear();
+
+        occupancyWidth = (wallWidth >> OCCUPANCY_SHIFT) + 1;
+        occupancyHeight = (wallHeight >> OCCUPANCY_SHIFT) + 1;
+        int words = (occupancyWidth * occupancyHeight + 63) >>> 6;
+        if (occupied.length < words) {
+            occupied = new long[words];
+        } else {
+            Arrays.fill(occupied, 0, words, 0L);
+        }
+    }
+
+    /**
+     * Adds a player at a wall pixel and returns the index of the cluster they joined: the first cluster
+     * whose leader is within the radius, or a new one led by this player.
+     */
+    int add(int player, int x, int z) {
+        if (radius > 0) {
+            int cellX = Math.floorDiv(x, radius);
+            int cellZ = Math.floorDiv(z, radius);
+            long radiusSquared = (long) radius * radius;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    for (int c = cellHeads.get(cellKey(cellX + dx, cellZ + dz), -1); c >= 0; c = nextInCell[c]) {
+                        long ox = leaderX[c] - x;
+                        long oz = leaderZ[c] - z;
+                        if (ox * ox + oz * oz <= radiusSquared) {
+                            members[c]++;
+                            return c;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (clusterCount == leader.length) grow();
+        int c = clusterCount++;
+        leader[c] = player;
+        leaderX[c] = x;
+        leaderZ[c] = z;
+        members[c] = 1;
+        nextInCell[c] = -1;
+        if (radius > 0) {
+            long key = cellKey(Math.floorDiv(x, radius), Math.floorDiv(z, radius));
+            nextInCell[c] = cellHeads.get(key, -1);
+            cellHeads.put(key, c);
+        }
+        return c;
+    }
+
+    int clusterCount() {
+        return clusterCount;
+    }
+
+    int leader(int cluster) {
+        return leader[cluster];
+    }
+
+    int x(int cluster) {
+        return leaderX[cluster];
+    }
+
+    int z(int cluster) {
+        return leaderZ[cluster];
+    }
+
+    int members(int cluster) {
+        return members[cluster];
+    }
+
+    /**
+     * Marks a rectangle as taken, e.g. by an icon.
+     */
+    void occupy(int x, int y, int width, int height) {
+        visit(x, y, width, height, true);
+    }
+
+    /**
+     * Claims a rectangle for a label if no part of it is taken yet. Returns false, claiming nothing, on a collision.
+     */
+    boolean tryClaim(int x, int y, int width, int height) {
+        if (!visit(x, y, width, height, false)) return false;
+        visit(x, y, width, height, true);
+        return true;
+    }
+
+    // Either marks every cell of the rectangle, or checks that none is marked. Cells off the wall never collide.
+    private boolean visit(int x, int y, int width, int height, boolean mark) {
+        int minX = Math.max(0, x >> OCCUPANCY_SHIFT);
+        int minY = Math.max(0, y >> OCCUPANCY_SHIFT);
+        int maxX = Math.min(occupancyWidth - 1, (x + width - 1) >> OCCUPANCY_SHIFT);
+        int maxY = Math.min(occupancyHeight - 1, (y + height - 1) >> OCCUPANCY_SHIFT);
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                int bit = cy * occupancyWidth + cx;
+                if (mark) {
+                    occupied[bit >>> 6] |= 1L << bit;
+                } else if ((occupied[bit >>> 6] & (1L << bit)) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        int capacity = leader.length * 2;
+        leader = Arrays.copyOf(leader, capacity);
+        leaderX = Arrays.copyOf(leaderX, capacity);
+        leaderZ = Arrays.copyOf(leaderZ, capacity);
+        members = Arrays.copyOf(members, capacity);
+        nextInCell = Arrays.copyOf(nextInCell, capacity);
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+}
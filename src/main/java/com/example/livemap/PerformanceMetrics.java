@@ -0,0 +1,226 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-overhead timings and counters for the plugin's subsystems. Timings go into power-of-two histograms,
+ * so recording is a few atomic adds and never allocates; percentiles are reported as bucket upper bounds.
+ * Recording is safe from any thread. Per-second rates are taken by {@link #sample(long)} on the main thread.
+ */
+final class PerformanceMetrics {
+
+    enum Timer {
+        RENDER("render", "map render"),
+        REFRESH_SWEEP("refresh-sweep", "refresh sweep"),
+        REINITIALIZE("reinitialize-maps", "reinitialize maps"),
+        NAMEPLATE("nameplate-update", "nameplate update (per frame)"),
+        GUI("gui", "GUI generation"),
+        COMPOSE("compose", "wall composition");
+
+        final String key;
+        final String displayName;
+
+        Timer(String key, String displayName) {
+            this.key = key;
+            this.displayName = displayName;
+        }
+    }
+
+    enum Counter {
+        PIXELS_WRITTEN("pixels-written", "pixels written"),
+        PLAYERS_PROJECTED("players-projected", "players projected"),
+        PLAYERS_CULLED("players-culled", "players culled"),
+        MAPS_RENDERED("maps-rendered", "maps rendered"),
+        PIXEL_BYTES("map-pixel-bytes", "map pixel bytes sent (est.)"),
+        CURSOR_BYTES("map-cursor-bytes", "map cursor bytes sent (est.)"),
+        UPDATES_DEFERRED("map-updates-deferred", "map renders deferred (bandwidth)");
+
+        final String key;
+        final String displayName;
+
+        Counter(String key, String displayName) {
+            this.key = key;
+            this.displayName = displayName;
+        }
+    }
+
+    private final Histogram[] timers = new Histogram[Timer.values().length];
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+    // Main thread only: counter totals at the last sample and the rates derived from them.
+    private final long[] sampledTotals = new long[Counter.values().length];
+    private final double[] ratesPerSecond = new double[Counter.values().length];
+    private long lastSampleNanos = -1L;
+
+    PerformanceMetrics() {
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new Histogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    void record(Timer timer, long nanos) {
+        timers[timer.ordinal()].record(nanos);
+    }
+
+    // Records the time elapsed since a System.nanoTime() reading.
+    void recordSince(Timer timer, long startNanos) {
+        record(timer, System.nanoTime() - startNanos);
+    }
+
+    void add(Counter counter, long amount) {
+        if (amount != 0) counters[counter.ordinal()].add(amount);
+    }
+
+    Histogram timer(Timer timer) {
+        return timers[timer.ordinal()];
+    }
+
+    long total(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    // Rate over the last sample interval.
+    double ratePerSecond(Counter counter) {
+        return ratesPerSecond[counter.ordinal()];
+    }
+
+    /**
+     * Updates the per-second rates from the counter totals. Main thread only.
+     */
+    void sample(long nowNanos) {
+        for (Counter counter : Counter.values()) {
+            long total = total(counter);
+            if (lastSampleNanos >= 0 && nowNanos > lastSampleNanos) {
+                ratesPerSecond[counter.ordinal()] = (total - sampledTotals[counter.ordinal()]) * 1e9 / (nowNanos - lastSampleNanos);
+            }
+            sampledTotals[counter.ordinal()] = total;
+        }
+        lastSampleNanos = nowNanos;
+    }
+
+    void reset() {
+        for (Histogram histogram : timers) {
+            histogram.reset();
+        }
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        Arrays.fill(sampledTotals, 0L);
+        Arrays.fill(ratesPerSecond, 0.0);
+    }
+
+    /**
+     * One JSON object with every timer and counter, in microseconds, for the periodic dump.
+     */
+    String toJson(long timestampMillis) {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"timestamp\":").append(timestampMillis).append(",\"timers\":{");
+        Timer[] timerValues = Timer.values();
+        for (int i = 0; i < timerValues.length; i++) {
+            Histogram histogram = timer(timerValues[i]);
+            if (i > 0) json.append(',');
+            json.append('"').append(timerValues[i].key).append("\":{")
+                    .append("\"count\":").append(histogram.count())
+                    .append(",\"mean-us\":").append(format(histogram.meanNanos() / 1000.0))
+                    .append(",\"p50-us\":").append(format(histogram.percentileNanos(0.50) / 1000.0))
+                    .append(",\"p95-us\":").append(format(histogram.percentileNanos(0.95) / 1000.0))
+                    .append(",\"p99-us\":").append(format(histogram.percentileNanos(0.99) / 1000.0))
+                    .append(",\"max-us\":").append(format(histogram.maxNanos() / 1000.0))
+                    .append('}');
+        }
+        json.append("},\"counters\":{");
+        Counter[] counterValues = Counter.values();
+        for (int i = 0; i < counterValues.length; i++) {
+            if (i > 0) json.append(',');
+            json.append('"').append(counterValues[i].key).append("\":{")
+                    .append("\"total\":").append(total(counterValues[i]))
+                    .append(",\"per-second\":").append(format(ratePerSecond(counterValues[i])))
+                    .append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    /**
+     * Histogram of durations with one bucket per power of two nanoseconds.
+     */
+    static final class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long value = Math.max(0L, nanos);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value) - (value == 0 ? 0 : 1));
+            count.increment();
+            totalNanos.add(value);
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        double meanNanos() {
+            long n = count.sum();
+            return n == 0 ? 0.0 : (double) totalNanos.sum() / n;
+        }
+
+        long maxNanos() {
+            return maxNanos.get();
+        }
+
+        // Upper bound of the bucket holding the given fraction of samples, capped at the maximum seen.
+        long percentileNanos(double fraction) {
+            long n = count.sum();
+            if (n == 0) return 0L;
+            long rank = (long) Math.ceil(fraction * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    long upper = i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+                    return Math.min(upper, maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0L);
+            }
+            count.reset();
+            totalNanos.reset();
+            maxNanos.set(0L);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.potion.PotionEffectType;
+import org.bukkit.scoreboard.Team;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A read-only capture of every player's position, shared by all map renderers.
+ * Players every viewer may see are bucketed per world into a grid of 128x128 block cells, so a
+ * renderer only visits the players inside the cells its map covers. Players only some viewers may
+ * see are kept out of the grid and listed per viewer instead, so the visibility policy is evaluated
+ * once per snapshot rather than per map and viewer.
+ */
+final class PlayerSnapshot {
+
+    // One cell is the area of a single scale 0 map (128 blocks).
+    static final int CELL_SHIFT = 7;
+
+    // Player indices are packed into the low 16 bits of the grid sort key.
+    private static final int MAX_PLAYERS = 1 << 16;
+
+    // Players with this permission are never drawn for anyone but themselves.
+    static final String HIDDEN_PERMISSION = "livemap.hidden";
+
+    static final PlayerSnapshot EMPTY = new PlayerSnapshot(0, new UUID[0], new String[0],
+            new UUID[0], new int[0], new int[0], new int[0], new float[0], new byte[0], new HashMap<>(), new int[0], new HashMap<>());
+
+    private final int size;
+    private final UUID[] playerIds;
+    private final String[] names;
+    private final UUID[] worldIds;
+    private final int[] blockX;
+    private final int[] blockY;
+    private final int[] blockZ;
+    private final float[] yaw;
+    private final byte[] colorIndex;
+    private final Map<UUID, WorldGrid> grids;
+
+    // Players kept out of the grids because not every viewer may see them.
+    private final int[] restricted;
+
+    // Per viewer: bitset of the players that viewer may see on top of the shared ones. Viewers without any are absent.
+    private final Map<UUID, long[]> viewerExtras;
+    private final Map<UUID, Integer> indexById = new HashMap<>();
+
+    private PlayerSnapshot(int size, UUID[] playerIds, String[] names, UUID[] worldIds, int[] blockX, int[] blockY, int[] blockZ,
+                           float[] yaw, byte[] colorIndex, Map<UUID, WorldGrid> grids, int[] restricted,
+                           Map<UUID, long[]> viewerExtras) {
+        this.size = size;
+        this.playerIds = playerIds;
+        this.names = names;
+        this.worldIds = worldIds;
+        this.blockX = blockX;
+        this.blockY = blockY;
+        this.blockZ = blockZ;
+        this.yaw = yaw;
+        this.colorIndex = colorIndex;
+        this.grids = grids;
+        this.restricted = restricted;
+        this.viewerExtras = viewerExtras;
+        for (int i = 0; i < size; i++) {
+            indexById.put(playerIds[i], i);
+        }
+    }
+
+    /**
+     * Captures the given players, who are also the viewers. A player is shared, drawn for everyone, when
+     * they are not invisible, lack {@value #HIDDEN_PERMISSION} and every other viewer can see them
+     * (so vanished players never leak onto a shared map). Any other player is recorded as an extra for
+     * each viewer that can see them, including invisible teammates on teams that see friendly invisibles.
+     * Must be called from the main thread.
+     */
+    static PlayerSnapshot capture(Collection<? extends Player> players, int colorCount) {
+        int capacity = Math.min(players.size(), MAX_PLAYERS);
+        if (capacity == 0) return EMPTY;
+
+        UUID[] playerIds = new UUID[capacity];
+        String[] names = new String[capacity];
+        int[] blockX = new int[capacity];
+        int[] blockY = new int[capacity];
+        int[] blockZ = new int[capacity];
+        float[] yaw = new float[capacity];
+        byte[] colorIndex = new byte[capacity];
+        UUID[] worldIds = new UUID[capacity];
+        Player[] captured = new Player[capacity];
+
+        int count = 0;
+        for (Player player : players) {
+            if (count == capacity) break;
+
+            Location loc = player.getLocation();
+            World world = loc.getWorld();
+            if (world == null) continue;
+
+            UUID id = player.getUniqueId();
+            playerIds[count] = id;
+            names[count] = ChatColor.stripColor(player.getName());
+            blockX[count] = loc.getBlockX();
+            blockY[count] = loc.getBlockY();
+            blockZ[count] = loc.getBlockZ();
+            yaw[count] = loc.getYaw();
+            colorIndex[count] = (byte) (Math.abs(id.hashCode()) % colorCount);
+            worldIds[count] = world.getUID();
+            captured[count] = player;
+            count++;
+        }
+
+        boolean[] shared = new boolean[count];
+        Map<UUID, long[]> viewerExtras = evaluateVisibility(captured, count, shared);
+
+        int restrictedCount = 0;
+        int[] restricted = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (!shared[i]) restricted[restrictedCount++] = i;
+        }
+        return new PlayerSnapshot(count, playerIds, names, worldIds, blockX, blockY, blockZ, yaw, colorIndex,
+                buildGrids(count, worldIds, blockX, blockZ, shared), Arrays.copyOf(restricted, restrictedCount), viewerExtras);
+    }
+
+    /**
+     * Builds a snapshot from raw positions without touching Bukkit, with every player shared.
+     * The arrays are used as they are. Meant for code that runs without a server, like the benchmarks.
+     */
+    static PlayerSnapshot of(UUID[] playerIds, String[] names, UUID[] worldIds, int[] blockX, int[] blockY, int[] blockZ,
+                             float[] yaw, int colorCount) {
+        int count = Math.min(playerIds.length, MAX_PLAYERS);
+        byte[] colorIndex = new byte[count];
+        boolean[] shared = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            colorIndex[i] = (byte) (Math.abs(playerIds[i].hashCode()) % colorCount);
+            shared[i] = true;
+        }
+        return new PlayerSnapshot(count, playerIds, names, worldIds, blockX, blockY, blockZ, yaw, colorIndex,
+                buildGrids(count, worldIds, blockX, blockZ, shared), new int[0], new HashMap<>());
+    }
+
+    // Fills the shared flags and returns the per-viewer extra bitsets.
+    private static Map<UUID, long[]> evaluateVisibility(Player[] players, int count, boolean[] shared) {
+        boolean[] invisible = new boolean[count];
+        boolean[] hidden = new boolean[count];
+        int restricted = 0;
+        for (int i = 0; i < count; i++) {
+            invisible[i] = players[i].hasPotionEffect(PotionEffectType.INVISIBILITY);
+            hidden[i] = players[i].hasPermission(HIDDEN_PERMISSION);
+            shared[i] = !invisible[i] && !hidden[i];
+            for (int v = 0; v < count && shared[i]; v++) {
+                if (v != i && !players[v].canSee(players[i])) shared[i] = false;
+            }
+            if (!shared[i]) restricted++;
+        }
+
+        Map<UUID, long[]> extras = new HashMap<>();
+        if (restricted == 0) return extras;
+
+        Team[] teams = new Team[count];
+        for (int i = 0; i < count; i++) {
+            teams[i] = players[i].getScoreboard().getEntryTeam(players[i].getName());
+        }
+
+        for (int v = 0; v < count; v++) {
+            long[] bits = null;
+            for (int i = 0; i < count; i++) {
+                if (shared[i] || i == v || hidden[i] || !players[v].canSee(players[i])) continue;
+                if (invisible[i] && !isFriendlyInvisible(teams[v], teams[i])) continue;
+
+                if (bits == null) bits = new long[(count + 63) >>> 6];
+                bits[i >>> 6] |= 1L << i;
+            }
+            if (bits != null) extras.put(players[v].getUniqueId(), bits);
+        }
+        return extras;
+    }
+
+    private static boolean isFriendlyInvisible(Team viewerTeam, Team targetTeam) {
+        return viewerTeam != null && targetTeam != null
+                && viewerTeam.getName().equals(targetTeam.getName()) && viewerTeam.canSeeFriendlyInvisibles();
+    }
+
+    private static Map<UUID, WorldGrid> buildGrids(int count, UUID[] worldIds, int[] blockX, int[] blockZ, boolean[] shared) {
+        // Sort keys per world: cell key in the high 48 bits, player index in the low 16 bits.
+        Map<UUID, long[]> keysByWorld = new HashMap<>();
+        Map<UUID, int[]> fillByWorld = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            if (shared[i]) fillByWorld.computeIfAbsent(worldIds[i], w -> new int[1])[0]++;
+        }
+        for (Map.Entry<UUID, int[]> entry : fillByWorld.entrySet()) {
+            keysByWorld.put(entry.getKey(), new long[entry.getValue()[0]]);
+            entry.getValue()[0] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!shared[i]) continue;
+            int[] fill = fillByWorld.get(worldIds[i]);
+            long cell = cellKey(blockX[i] >> CELL_SHIFT, blockZ[i] >> CELL_SHIFT);
+            keysByWorld.get(worldIds[i])[fill[0]++] = cell | i;
+        }
+
+        Map<UUID, WorldGrid> grids = new HashMap<>();
+        for (Map.Entry<UUID, long[]> entry : keysByWorld.entrySet()) {
+            grids.put(entry.getKey(), WorldGrid.build(entry.getValue()));
+        }
+        return grids;
+    }
+
+    /**
+     * Packs a cell coordinate into the high 48 bits of a long. The low 16 bits are left free
+     * for a player index, so keys and packed entries sort in the same order.
+     */
+    private static long cellKey(int cellX, int cellZ) {
+        return (((long) (cellX & 0xFFFFFF) << 24) | (cellZ & 0xFFFFFF)) << 16;
+    }
+
+    int size() {
+        return size;
+    }
+
+    UUID playerId(int index) { return playerIds[index]; }
+    String name(int index) { return names[index]; }
+    UUID worldId(int index) { return worldIds[index]; }
+    int blockX(int index) { return blockX[index]; }
+    int blockY(int index) { return blockY[index]; }
+    int blockZ(int index) { return blockZ[index]; }
+    float yaw(int index) { return yaw[index]; }
+    int colorIndex(int index) { return colorIndex[index]; }
+
+    /**
+     * Index of the player, or -1 if they are not in this snapshot.
+     */
+    int indexOf(UUID playerId) {
+        Integer index = indexById.get(playerId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Bitset of the players the viewer may see in addition to the shared ones, or null if there are none.
+     */
+    long[] extrasFor(UUID viewerId) {
+        return viewerExtras.get(viewerId);
+    }
+
+    // True if at least one viewer has extras, i.e. shared maps do not show everything someone may see.
+    boolean hasViewerExtras() {
+        return !viewerExtras.isEmpty();
+    }
+
+    /**
+     * Writes the indices of all shared players in the given world whose block position lies inside the
+     * inclusive bounds into {@code out}, and returns how many were written.
+     * {@code out} must be at least {@link #size()} long.
+     */
+    int collect(UUID worldId, int minX, int minZ, int maxX, int maxZ, int[] out) {
+        return collect(worldId, minX, minZ, maxX, maxZ, out, 0);
+    }
+
+    // Appends the matching shared players to out after the first {@code found} entries; returns the new count.
+    private int collect(UUID worldId, int minX, int minZ, int maxX, int maxZ, int[] out, int found) {
+        WorldGrid grid = grids.get(worldId);
+        if (grid == null) return found;
+
+        int minCellX = minX >> CELL_SHIFT;
+        int maxCellX = maxX >> CELL_SHIFT;
+        int minCellZ = minZ >> CELL_SHIFT;
+        int maxCellZ = maxZ >> CELL_SHIFT;
+        long cellsSpanned = (long) (maxCellX - minCellX + 1) * (maxCellZ - minCellZ + 1);
+
+        if (cellsSpanned >= grid.cellKeys.length) {
+            // Fewer occupied cells than cells in range: a straight pass over the world is cheaper.
+            for (int m = 0; m < grid.members.length; m++) {
+                found = accept(grid.members[m], minX, minZ, maxX, maxZ, out, found);
+            }
+            return found;
+        }
+
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                int slot = Arrays.binarySearch(grid.cellKeys, cellKey(cellX, cellZ));
+                if (slot < 0) continue;
+                for (int m = grid.cellStart[slot]; m < grid.cellStart[slot + 1]; m++) {
+                    found = accept(grid.members[m], minX, minZ, maxX, maxZ, out, found);
+                }
+            }
+        }
+        return found;
+    }
+
+    private int accept(int index, int minX, int minZ, int maxX, int maxZ, int[] out, int found) {
+        if (inside(index, minX, minZ, maxX, maxZ)) {
+            out[found++] = index;
+        }
+        return found;
+    }
+
+    private boolean inside(int index, int minX, int minZ, int maxX, int maxZ) {
+        int x = blockX[index];
+        int z = blockZ[index];
+        return x >= minX && x <= maxX && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * Writes the indices of the captured players, shared or restricted, standing in the given world inside the
+     * inclusive bounds into {@code out}, and returns how many were written. Used to tell who is close enough
+     * to see a map. {@code out} must be at least {@link #size()} long.
+     */
+    int collectWithin(UUID worldId, int minX, int minZ, int maxX, int maxZ, int[] out) {
+        int found = 0;
+        for (int index : restricted) {
+            if (worldIds[index].equals(worldId)) found = accept(index, minX, minZ, maxX, maxZ, out, found);
+        }
+        return collect(worldId, minX, minZ, maxX, maxZ, out, found);
+    }
+
+    /**
+     * Occupied cells of one world in sorted order, with the player indices of each cell stored contiguously.
+     */
+    private static final class WorldGrid {
+        private final long[] cellKeys;
+        private final int[] cellStart;
+        private final int[] members;
+
+        private WorldGrid(long[] cellKeys, int[] cellStart, int[] members) {
+            this.cellKeys = cellKeys;
+            this.cellStart = cellStart;
+            this.members = members;
+        }
+
+        static WorldGrid build(long[] packed) {
+            Arrays.sort(packed);
+
+            int[] members = new int[packed.length];
+            long[] keys = new long[packed.length];
+            int[] starts = new int[packed.length + 1];
+            int cells = 0;
+            long previous = 0L;
+            for (int i = 0; i < packed.length; i++) {
+                long key = packed[i] & ~0xFFFFL;
+                if (i == 0 || key != previous) {
+                    keys[cells] = key;
+                    starts[cells] = i;
+                    cells++;
+                    previous = key;
+                }
+                members[i] = (int) (packed[i] & 0xFFFFL);
+            }
+            starts[cells] = packed.length;
+
+            return new WorldGrid(Arrays.copyOf(keys, cells), Arrays.copyOf(starts, cells + 1), members);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Recalculates the player position snapshot on its own timer (update-interval-ticks) and publishes it
+ * with an atomic swap. Renderers only ever read the latest published snapshot, so how often clients
+ * request map data no longer decides how often player positions are collected.
+ */
+final class PositionCache {
+
+    private final int colorCount;
+    private final Consumer<PlayerSnapshot> onPublish;
+    private final AtomicReference<PlayerSnapshot> published = new AtomicReference<>(PlayerSnapshot.EMPTY);
+
+    private BukkitTask task;
+    private long intervalTicks;
+
+    PositionCache(int colorCount, Consumer<PlayerSnapshot> onPublish) {
+        this.colorCount = colorCount;
+        this.onPublish = onPublish;
+    }
+
+    /**
+     * (Re)starts the capture timer. A running timer with the same interval is left alone.
+     */
+    void start(Plugin plugin, long intervalTicks) {
+        long interval = Math.max(1L, intervalTicks);
+        if (task != null && !task.isCancelled() && interval == this.intervalTicks) return;
+
+        stop();
+        this.intervalTicks = interval;
+        this.task = Bukkit.getScheduler().runTaskTimer(plugin, this::refresh, 0L, interval);
+    }
+
+    void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    // Captures and publishes a new snapshot, then notifies the listener. Main thread only.
+    void refresh() {
+        PlayerSnapshot snapshot = PlayerSnapshot.capture(Bukkit.getOnlinePlayers(), colorCount);
+        published.set(snapshot);
+        onPublish.accept(snapshot);
+    }
+
+    // The latest published snapshot. Safe to call from any thread.
+    PlayerSnapshot get() {
+        return published.get();
+    }
+
+    void clear() {
+        published.set(PlayerSnapshot.EMPTY);
+    }
+
+    long getIntervalTicks() {
+        return intervalTicks;
+    }
+}
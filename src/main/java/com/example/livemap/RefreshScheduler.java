@@ -0,0 +1,183 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Picks a refresh interval for every active map between a configured minimum and maximum. Maps where
+ * players move fast, and maps many players are watching, are refreshed often; maps showing nobody
+ * moving fall back to the maximum. A wall is re-evaluated only when it is due. Main thread only.
+ */
+final class RefreshScheduler {
+
+    // Speed at which motion alone asks for the minimum interval; a sprinting player moves about 5.6 blocks/s.
+    private static final double FAST_BLOCKS_PER_SECOND = 8.0;
+
+    // Below this a wall counts as idle.
+    private static final double IDLE_BLOCKS_PER_SECOND = 0.1;
+
+    // Viewer count at which the audience bonus is at its full weight.
+    private static final int LARGE_AUDIENCE = 16;
+
+    private int minTicks;
+    private int maxTicks;
+
+    private final Map<Integer, Rate> rates = new HashMap<>();
+
+    // Per-player speed in blocks per second, indexed like the last observed snapshot.
+    private PlayerSnapshot lastSnapshot = PlayerSnapshot.EMPTY;
+    private long lastTick = 0L;
+    private float[] speeds = new float[0];
+    private int[] nearbyPlayers = new int[0];
+
+    RefreshScheduler(int minTicks, int maxTicks) {
+        configure(minTicks, maxTicks);
+    }
+
+    void configure(int minTicks, int maxTicks) {
+        this.minTicks = Math.max(1, minTicks);
+        this.maxTicks = Math.max(this.minTicks, maxTicks);
+    }
+
+    int getMinTicks() {
+        return minTicks;
+    }
+
+    int getMaxTicks() {
+        return maxTicks;
+    }
+
+    /**
+     * Measures every player's speed since the previously observed snapshot.
+     */
+    void observe(PlayerSnapshot snapshot, long tick) {
+        float[] next = new float[snapshot.size()];
+        long elapsed = tick - lastTick;
+        if (elapsed > 0) {
+            for (int i = 0; i < snapshot.size(); i++) {
+                int previous = lastSnapshot.indexOf(snapshot.playerId(i));
+                if (previous < 0 || !snapshot.worldId(i).equals(lastSnapshot.worldId(previous))) continue;
+
+                double dx = snapshot.blockX(i) - lastSnapshot.blockX(previous);
+                double dy = snapshot.blockY(i) - lastSnapshot.blockY(previous);
+                double dz = snapshot.blockZ(i) - lastSnapshot.blockZ(previous);
+                next[i] = (float) (Math.sqrt(dx * dx + dy * dy + dz * dz) * 20.0 / elapsed);
+            }
+        }
+        speeds = next;
+        lastSnapshot = snapshot;
+        lastTick = tick;
+        if (nearbyPlayers.length < snapshot.size()) {
+            nearbyPlayers = new int[snapshot.size()];
+        }
+    }
+
+    /**
+     * True if the wall's interval has passed since it was last updated. New walls are always due.
+     */
+    boolean isDue(MapWall wall, long tick) {
+        Rate rate = firstRate(wall);
+        return rate == null || tick - rate.lastUpdateTick >= rate.intervalTicks;
+    }
+
+    /**
+     * Records that the wall was updated now, and picks its next interval from the motion inside it
+     * (the fastest player, decaying slowly so short pauses do not drop the rate) and its audience.
+     */
+    void updated(MapWall wall, PlayerSnapshot snapshot, MapActivation activation, long tick) {
+        Rate previous = firstRate(wall);
+
+        double speed = 0.0;
+        int count = wall.collect(snapshot, nearbyPlayers);
+        for (int i = 0; i < count; i++) {
+            int index = nearbyPlayers[i];
+            if (index < speeds.length) speed = Math.max(speed, speeds[index]);
+        }
+        if (previous != null) {
+            speed = Math.max(speed, previous.blocksPerSecond * 0.5);
+        }
+
+        int viewers = 0;
+        for (int i = 0; i < wall.size(); i++) {
+            MapArea tile = wall.tileAt(i);
+            if (tile != null) viewers = Math.max(viewers, activation.viewers(tile.mapId));
+        }
+
+        double motion = Math.min(1.0, speed / FAST_BLOCKS_PER_SECOND);
+        double audience = viewers <= 1 ? 0.0 : Math.min(1.0, Math.log(viewers) / Math.log(LARGE_AUDIENCE));
+        double urgency = Math.min(1.0, motion * (1.0 + audience));
+        int interval = (int) Math.round(maxTicks - (maxTicks - minTicks) * urgency);
+
+        for (int i = 0; i < wall.size(); i++) {
+            MapArea tile = wall.tileAt(i);
+            if (tile == null) continue;
+            Rate rate = rates.computeIfAbsent(tile.mapId, id -> new Rate());
+            rate.lastUpdateTick = tick;
+            rate.intervalTicks = interval;
+            rate.blocksPerSecond = speed;
+            rate.viewers = viewers;
+        }
+    }
+
+    // Current interval of the map, or the maximum if it has not been scheduled yet.
+    int intervalTicks(int mapId) {
+        Rate rate = rates.get(mapId);
+        return rate == null ? maxTicks : rate.intervalTicks;
+    }
+
+    /**
+     * Visits every scheduled map with its current rate.
+     */
+    void forEach(BiConsumer<Integer, Rate> visitor) {
+        rates.forEach(visitor);
+    }
+
+    Rate rate(int mapId) {
+        return rates.get(mapId);
+    }
+
+    void clear() {
+        rates.clear();
+        lastSnapshot = PlayerSnapshot.EMPTY;
+        speeds = new float[0];
+    }
+
+    private Rate firstRate(MapWall wall) {
+        for (int i = 0; i < wall.size(); i++) {
+            MapArea tile = wall.tileAt(i);
+            if (tile != null) return rates.get(tile.mapId);
+        }
+        return null;
+    }
+
+    static final class Rate {
+        long lastUpdateTick;
+        int intervalTicks;
+        double blocksPerSecond;
+        int viewers;
+
+        // Why the map has its interval, for the status command.
+        String reason() {
+            if (blocksPerSecond < IDLE_BLOCKS_PER_SECOND) return "idle";
+            return String.format(Locale.ROOT, "%.1f blocks/s", blocksPerSecond) + ", " + viewers
+                    + (viewers == 1 ? " viewer" : " viewers");
+        }
+    }
+}
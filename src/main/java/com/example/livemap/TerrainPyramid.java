@@ -0,0 +1,190 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Derives the terrain of zoomed-out maps from finer base layers. Every scale N pixel is the dominant
+ * color of the 2x2 scale N-1 pixels beneath it; finer tiles come from maps in the coordinate index,
+ * and scales without a map of their own are derived recursively down to scale 0. Main thread only.
+ */
+final class TerrainPyramid {
+
+    private static final int MAX_SCALE = 4;
+
+    private final MapCoordinateIndex mapIndex;
+    private final BaseLayerStore baseLayers;
+
+    TerrainPyramid(MapCoordinateIndex mapIndex, BaseLayerStore baseLayers) {
+        this.mapIndex = mapIndex;
+        this.baseLayers = baseLayers;
+    }
+
+    /**
+     * Fills the map's base layer from finer tiles. Returns how many scale-0 tiles under the map were
+     * missing (0 means the layer is complete), or -1 if no finer data exists at all.
+     */
+    int derive(MapArea area, byte[] out) {
+        int scale = Integer.numberOfTrailingZeros(area.scaleFactor);
+        if (scale == 0) return -1;
+
+        Build build = new Build(area.worldId);
+        boolean found = fill(build, scale, area.originX(), area.originZ(), 0, 0, 128, 128, out);
+        return found ? build.missing : -1;
+    }
+
+    /**
+     * Redraws the part of every grid-aligned ancestor map that lies over the changed map, from the
+     * changed map up to scale 4. Returns the IDs of the ancestor maps whose base layer was rewritten.
+     */
+    List<Integer> propagate(MapArea changed) {
+        List<Integer> updated = new ArrayList<>();
+        int childScale = Integer.numberOfTrailingZeros(changed.scaleFactor);
+
+        byte[] layer = new byte[BaseLayerStore.SLOT_SIZE];
+        int[] ancestors = mapIndex.mapsCovering(changed.worldId, changed.originX(), changed.originZ());
+        for (int scale = childScale + 1; scale <= MAX_SCALE; scale++) {
+            int parentId = ancestors[scale];
+            if (parentId < 0) continue;
+            int blockArea = 128 << scale;
+            int originX = Math.floorDiv(changed.originX(), blockArea) * blockArea;
+            int originZ = Math.floorDiv(changed.originZ(), blockArea) * blockArea;
+
+            // Only the pixels over the changed map are redrawn; the rest of the parent keeps its layer.
+            int scaleFactor = 1 << scale;
+            int x0 = Math.max(0, Math.floorDiv(changed.originX() - originX, scaleFactor));
+            int z0 = Math.max(0, Math.floorDiv(changed.originZ() - originZ, scaleFactor));
+            int x1 = Math.min(128, Math.floorDiv(changed.originX() + changed.blockArea() - originX + scaleFactor - 1, scaleFactor));
+            int z1 = Math.min(128, Math.floorDiv(changed.originZ() + changed.blockArea() - originZ + scaleFactor - 1, scaleFactor));
+
+            if (!baseLayers.read(parentId, layer)) {
+                Arrays.fill(layer, (byte) 0);
+            }
+            // Fresh build per level, since the level below may just have been rewritten.
+            if (fill(new Build(changed.worldId), scale, originX, originZ, x0, z0, x1, z1, layer)) {
+                baseLayers.put(parentId, layer);
+                updated.add(parentId);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Downsamples the pixel rectangle [x0, x1) x [z0, z1) of a scale N area from scale N-1.
+     * Returns false if no finer tile under the rectangle had data.
+     */
+    private boolean fill(Build build, int scale, int originX, int originZ, int x0, int z0, int x1, int z1, byte[] out) {
+        int scaleFactor = 1 << scale;
+        int half = scaleFactor >> 1;
+        int fineArea = 128 * half;
+
+        boolean found = false;
+        long cachedKey = Long.MIN_VALUE;
+        byte[] cachedTile = null;
+        byte[] samples = new byte[4];
+
+        for (int pz = z0; pz < z1; pz++) {
+            for (int px = x0; px < x1; px++) {
+                int blockX = originX + px * scaleFactor;
+                int blockZ = originZ + pz * scaleFactor;
+
+                for (int s = 0; s < 4; s++) {
+                    int bx = blockX + (s & 1) * half;
+                    int bz = blockZ + (s >> 1) * half;
+                    int tileX = Math.floorDiv(bx, fineArea);
+                    int tileZ = Math.floorDiv(bz, fineArea);
+
+                    long key = tileKey(tileX, tileZ);
+                    if (key != cachedKey) {
+                        cachedKey = key;
+                        cachedTile = tile(build, scale - 1, tileX, tileZ);
+                    }
+                    if (cachedTile == null) {
+                        samples[s] = 0;
+                        continue;
+                    }
+                    found = true;
+                    int fx = (bx - tileX * fineArea) / half;
+                    int fz = (bz - tileZ * fineArea) / half;
+                    samples[s] = cachedTile[(fz << 7) | fx];
+                }
+                out[(pz << 7) | px] = dominant(samples);
+            }
+        }
+        return found;
+    }
+
+    // The base layer of a grid tile: its map's stored layer if there is one, else derived from finer tiles.
+    private byte[] tile(Build build, int scale, int tileX, int tileZ) {
+        Map<Long, byte[]> level = build.tiles.computeIfAbsent(scale, s -> new HashMap<>());
+        long key = tileKey(tileX, tileZ);
+        if (level.containsKey(key)) return level.get(key);
+
+        // Tile (tileX, tileZ) is that many tiles away from the tile at the origin.
+        int blockArea = 128 << scale;
+        int mapId = mapIndex.neighbor(build.worldId, blockArea / 2, blockArea / 2, scale, tileX, tileZ);
+        byte[] layer = new byte[BaseLayerStore.SLOT_SIZE];
+        if (mapId < 0 || !baseLayers.read(mapId, layer)) {
+            if (scale == 0) {
+                build.missing++;
+                layer = null;
+            } else if (!fill(build, scale, tileX * blockArea, tileZ * blockArea, 0, 0, 128, 128, layer)) {
+                layer = null;
+            }
+        }
+        level.put(key, layer);
+        return layer;
+    }
+
+    // Most frequent non-transparent color of the four samples; ties go to the earliest sample.
+    private static byte dominant(byte[] samples) {
+        byte best = 0;
+        int bestCount = 0;
+        for (int i = 0; i < 4; i++) {
+            if (samples[i] == 0) continue;
+            int count = 0;
+            for (int j = 0; j < 4; j++) {
+                if (samples[j] == samples[i]) count++;
+            }
+            if (count > bestCount) {
+                best = samples[i];
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private static long tileKey(int tileX, int tileZ) {
+        return ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+    }
+
+    // Tiles resolved during one derive or propagate step, so shared children are read once.
+    private static final class Build {
+        final UUID worldId;
+        final Map<Integer, Map<Long, byte[]>> tiles = new HashMap<>();
+        int missing = 0;
+
+        Build(UUID worldId) {
+            this.worldId = worldId;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Color;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.entity.Player;
+import org.bukkit.map.MapPalette;
+import org.bukkit.map.MapView;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+
+/**
+ * Renders the terrain of a map without anyone having to explore it. Chunks of the map area are loaded
+ * asynchronously in bounded batches, snapshotted on the main thread, and turned into vanilla-style
+ * map colors on a worker pool. The finished image is stored as the map's base layer.
+ */
+final class TerrainRenderer {
+
+    // Vanilla map brightness levels, as the low two bits of a map color ID.
+    private static final int BRIGHTNESS_LOW = 0;
+    private static final int BRIGHTNESS_NORMAL = 1;
+    private static final int BRIGHTNESS_HIGH = 2;
+
+    // Deepest water column that still changes the shading.
+    private static final int MAX_WATER_DEPTH = 16;
+
+    // Base palette index per block map color RGB; only a few dozen distinct colors exist.
+    private static final Map<Integer, Integer> BASE_COLOR_BY_RGB = new ConcurrentHashMap<>();
+
+    private final Plugin plugin;
+    private final BaseLayerStore baseLayers;
+    private final IntConsumer onRendered;
+    private final ExecutorService workers;
+
+    // Queued and running jobs in submission order. Main thread only.
+    private final Map<Integer, Job> jobs = new LinkedHashMap<>();
+
+    // Chunks requested or being sampled, across all jobs.
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private int maxConcurrentLoads;
+    private BukkitTask task;
+    private volatile boolean stopped = false;
+
+    /**
+     * @param onRendered called on the main thread with the map ID after a new base layer was stored
+     */
+    TerrainRenderer(Plugin plugin, BaseLayerStore baseLayers, int threads, int maxConcurrentLoads, IntConsumer onRendered) {
+        this.plugin = plugin;
+        this.baseLayers = baseLayers;
+        this.onRendered = onRendered;
+        this.maxConcurrentLoads = Math.max(1, maxConcurrentLoads);
+
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "LiveMaps-Terrain-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), factory);
+    }
+
+    void setMaxConcurrentLoads(int maxConcurrentLoads) {
+        this.maxConcurrentLoads = Math.max(1, maxConcurrentLoads);
+    }
+
+    /**
+     * Queues the map for pre-rendering. Progress and completion are reported to the recipient, if any.
+     * Returns false if the map is already queued or its world is not loaded.
+     */
+    boolean render(MapView view, Player recipient) {
+        if (stopped || jobs.containsKey(view.getId())) return false;
+        World world = view.getWorld();
+        MapArea area = MapArea.of(view);
+        if (world == null || area == null) return false;
+
+        jobs.put(view.getId(), new Job(world, area, recipient == null ? null : recipient.getUniqueId()));
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::pump, 1L, 1L);
+        }
+        return true;
+    }
+
+    boolean isRendering(int mapId) {
+        return jobs.containsKey(mapId);
+    }
+
+    /**
+     * Completion of the map's pre-render in percent, or -1 if it is not being rendered.
+     */
+    int progress(int mapId) {
+        Job job = jobs.get(mapId);
+        return job == null ? -1 : job.finished.get() * 100 / job.totalChunks;
+    }
+
+    int queuedJobs() {
+        return jobs.size();
+    }
+
+    void shutdown() {
+        stopped = true;
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        jobs.clear();
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- MAIN THREAD ---
+
+    // Requests chunks in job order until the concurrent load limit is reached, then reports progress.
+    private void pump() {
+        if (jobs.isEmpty()) {
+            task.cancel();
+            task = null;
+            return;
+        }
+
+        for (Job job : jobs.values()) {
+            while (job.nextChunk < job.totalChunks && inFlight.get() < maxConcurrentLoads) {
+                requestChunk(job, job.nextChunk++);
+            }
+            if (inFlight.get() >= maxConcurrentLoads) break;
+        }
+
+        for (Job job : jobs.values()) {
+            reportProgress(job);
+        }
+    }
+
+    private void requestChunk(Job job, int index) {
+        int chunkX = job.minChunkX + index % job.chunksWide;
+        int chunkZ = job.minChunkZ + index / job.chunksWide;
+
+        inFlight.incrementAndGet();
+        job.world.getChunkAtAsync(chunkX, chunkZ, true).whenComplete((chunk, error) -> {
+            // Paper completes chunk futures on the main thread.
+            if (stopped) return;
+            if (chunk == null || error != null) {
+                chunkDone(job);
+                return;
+            }
+
+            ChunkSnapshot snapshot = chunk.getChunkSnapshot(true, false, false);
+            try {
+                workers.execute(() -> {
+                    try {
+                        job.sample(snapshot, chunkX, chunkZ);
+                    } catch (RuntimeException e) {
+                        plugin.getLogger().log(Level.WARNING, "Failed to pre-render chunk " + chunkX + ", " + chunkZ
+                                + " of map " + job.area.mapId, e);
+                    } finally {
+                        chunkDone(job);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                chunkDone(job);
+            }
+        });
+    }
+
+    private void reportProgress(Job job) {
+        int quarter = job.finished.get() * 4 / job.totalChunks;
+        if (quarter <= job.reportedQuarter || quarter >= 4) return;
+        job.reportedQuarter = quarter;
+
+        Player player = job.recipient == null ? null : Bukkit.getPlayer(job.recipient);
+        if (player != null) {
+            player.sendMessage(ChatColor.AQUA + "Rendering map #" + job.area.mapId + ": " + ChatColor.YELLOW + (quarter * 25) + "%"
+                    + ChatColor.GRAY + " (" + job.finished.get() + "/" + job.totalChunks + " chunks)");
+        }
+    }
+
+    private void complete(Job job, byte[] colors) {
+        if (stopped || jobs.remove(job.area.mapId) != job) return;
+        baseLayers.put(job.area.mapId, colors);
+        onRendered.accept(job.area.mapId);
+
+        Player player = job.recipient == null ? null : Bukkit.getPlayer(job.recipient);
+        if (player != null) {
+            player.sendMessage(ChatColor.GREEN + "Map #" + job.area.mapId + " rendered (" + job.totalChunks + " chunks).");
+        }
+    }
+
+    // --- ANY THREAD ---
+
+    private void chunkDone(Job job) {
+        inFlight.decrementAndGet();
+        if (job.finished.incrementAndGet() < job.totalChunks || stopped) return;
+
+        // The last chunk finishes the image; shading needs every row, so it runs only once all are sampled.
+        try {
+            workers.execute(() -> {
+                byte[] colors = job.shade();
+                if (!stopped) {
+                    Bukkit.getScheduler().runTask(plugin, () -> complete(job, colors));
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // Shutting down.
+        }
+    }
+
+    // Map palette base index (color ID / 4) of a block color, 0 for blocks that do not show on maps.
+    @SuppressWarnings("deprecation")
+    private static int baseColor(Color color) {
+        int rgb = color.asRGB();
+        if (rgb == 0) return 0;
+        return BASE_COLOR_BY_RGB.computeIfAbsent(rgb,
+                c -> (MapPalette.matchColor(color.getRed(), color.getGreen(), color.getBlue()) & 0xFF) >> 2);
+    }
+
+    /**
+     * One map being rendered. Each chunk fills a disjoint set of pixels, so workers write the
+     * per-pixel arrays without locking; the finished counter orders those writes before shading.
+     */
+    private static final class Job {
+        final World world;
+        final MapArea area;
+        final UUID recipient;
+        final int minY;
+
+        final int minChunkX;
+        final int minChunkZ;
+        final int chunksWide;
+        final int totalChunks;
+
+        final byte[] baseColors = new byte[128 * 128];
+        final double[] heights = new double[128 * 128];
+        final double[] waterDepths = new double[128 * 128];
+
+        final AtomicInteger finished = new AtomicInteger();
+
+        // Main thread only.
+        int nextChunk = 0;
+        int reportedQuarter = 0;
+
+        Job(World world, MapArea area, UUID recipient) {
+            this.world = world;
+            this.area = area;
+            this.recipient = recipient;
+            this.minY = world.getMinHeight();
+
+            this.minChunkX = area.originX() >> 4;
+            this.minChunkZ = area.originZ() >> 4;
+            int maxChunkX = (area.originX() + area.blockArea() - 1) >> 4;
+            int maxChunkZ = (area.originZ() + area.blockArea() - 1) >> 4;
+            this.chunksWide = maxChunkX - minChunkX + 1;
+            this.totalChunks = chunksWide * (maxChunkZ - minChunkZ + 1);
+        }
+
+        /**
+         * Samples the pixels whose north-west block lies in this chunk: the most common block color,
+         * the mean surface height and the mean water depth over the pixel's columns inside the chunk.
+         */
+        void sample(ChunkSnapshot snapshot, int chunkX, int chunkZ) {
+            int scaleFactor = area.scaleFactor;
+            int chunkMinX = chunkX << 4;
+            int chunkMinZ = chunkZ << 4;
+
+            int firstX = Math.max(0, Math.floorDiv(chunkMinX - area.originX() + scaleFactor - 1, scaleFactor));
+            int lastX = Math.min(127, Math.floorDiv(chunkMinX + 15 - area.originX(), scaleFactor));
+            int firstZ = Math.max(0, Math.floorDiv(chunkMinZ - area.originZ() + scaleFactor - 1, scaleFactor));
+            int lastZ = Math.min(127, Math.floorDiv(chunkMinZ + 15 - area.originZ(), scaleFactor));
+
+            int[] counts = new int[64];
+            int[] seen = new int[64];
+            for (int pz = firstZ; pz <= lastZ; pz++) {
+                for (int px = firstX; px <= lastX; px++) {
+                    int blockX = area.originX() + px * scaleFactor;
+                    int blockZ = area.originZ() + pz * scaleFactor;
+
+                    int columns = 0;
+                    long heightSum = 0;
+                    int waterSum = 0;
+                    int seenCount = 0;
+                    for (int bz = blockZ; bz < blockZ + scaleFactor && (bz >> 4) == chunkZ; bz++) {
+                        for (int bx = blockX; bx < blockX + scaleFactor && (bx >> 4) == chunkX; bx++) {
+                            int x = bx & 15;
+                            int z = bz & 15;
+
+                            int y = snapshot.getHighestBlockYAt(x, z);
+                            int base = 0;
+                            BlockData data = null;
+                            for (; y >= minY; y--) {
+                                data = snapshot.getBlockData(x, y, z);
+                                base = baseColor(data.getMapColor());
+                                if (base != 0) break;
+                            }
+
+                            if (base != 0 && data.getMaterial() == Material.WATER) {
+                                int depth = 1;
+                                while (depth < MAX_WATER_DEPTH && y - depth >= minY
+                                        && snapshot.getBlockType(x, y - depth, z) == Material.WATER) {
+                                    depth++;
+                                }
+                                waterSum += depth;
+                            }
+
+                            if (counts[base & 63]++ == 0) seen[seenCount++] = base & 63;
+                            heightSum += y;
+                            columns++;
+                        }
+                    }
+                    if (columns == 0) continue;
+
+                    // Transparent only wins if nothing else was seen.
+                    int best = 0;
+                    for (int i = 0; i < seenCount; i++) {
+                        int base = seen[i];
+                        if (base != 0 && (best == 0 || counts[base] > counts[best])) best = base;
+                    }
+                    for (int i = 0; i < seenCount; i++) {
+                        counts[seen[i]] = 0;
+                    }
+
+                    int index = (pz << 7) | px;
+                    baseColors[index] = (byte) best;
+                    heights[index] = (double) heightSum / columns;
+                    waterDepths[index] = (double) waterSum / columns;
+                }
+            }
+        }
+
+        /**
+         * Applies vanilla's brightness rules: water by depth, land by the height difference to the
+         * pixel north of it, both with the checkerboard dither vanilla uses.
+         */
+        byte[] shade() {
+            int scale = Integer.numberOfTrailingZeros(area.scaleFactor);
+            byte[] colors = new byte[128 * 128];
+            for (int z = 0; z < 128; z++) {
+                for (int x = 0; x < 128; x++) {
+                    int index = (z << 7) | x;
+                    int base = baseColors[index];
+                    if (base == 0) continue;
+
+                    int dither = (x + z) & 1;
+                    int brightness;
+                    if (waterDepths[index] > 0) {
+                        double f = waterDepths[index] * 0.1 + dither * 0.2;
+                        brightness = f < 0.5 ? BRIGHTNESS_HIGH : (f > 0.9 ? BRIGHTNESS_LOW : BRIGHTNESS_NORMAL);
+                    } else {
+                        double north = z > 0 ? heights[index - 128] : heights[index];
+                        double f = (heights[index] - north) * 4.0 / (scale + 4) + (dither - 0.5) * 0.4;
+                        brightness = f > 0.6 ? BRIGHTNESS_HIGH : (f < -0.6 ? BRIGHTNESS_LOW : BRIGHTNESS_NORMAL);
+                    }
+                    colors[index] = (byte) (base * 4 + brightness);
+                }
+            }
+            return colors;
+        }
+    }
+}
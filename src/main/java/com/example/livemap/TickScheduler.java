@@ -0,0 +1,185 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Spreads main-thread work over ticks. Work is queued in lanes (map refresh, overlay composition, frame
+ * maintenance); every tick the lanes take turns running one task each until the per-tick millisecond
+ * budget is used up, and whatever is left carries over to the next tick. Tasks are keyed, so queueing
+ * work for a map or frame that is still pending replaces it instead of adding a duplicate. Main thread only.
+ */
+final class TickScheduler {
+
+    enum Lane {
+        REFRESH("map refresh"),
+        COMPOSE("composition"),
+        FRAMES("frame maintenance");
+
+        final String displayName;
+
+        Lane(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    private final Plugin plugin;
+    private final Map<Object, Runnable>[] queues;
+    private BukkitTask task;
+    private long budgetNanos;
+
+    // Lane that runs first in the next tick, so no lane is always last in line.
+    private int nextLane = 0;
+
+    // --- METRICS ---
+    private long ticksWithWork = 0L;
+    private long overruns = 0L;
+    private long carriedOver = 0L;
+    private long tasksRun = 0L;
+    private long lastTickNanos = 0L;
+    private int peakBacklog = 0;
+
+    @SuppressWarnings("unchecked")
+    TickScheduler(Plugin plugin, double budgetMillis) {
+        this.plugin = plugin;
+        this.queues = new Map[Lane.values().length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new LinkedHashMap<>();
+        }
+        setBudgetMillis(budgetMillis);
+    }
+
+    void setBudgetMillis(double budgetMillis) {
+        this.budgetNanos = (long) (Math.max(0.0, budgetMillis) * 1_000_000L);
+    }
+
+    double getBudgetMillis() {
+        return budgetNanos / 1_000_000.0;
+    }
+
+    void start() {
+        if (task != null && !task.isCancelled()) return;
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::runTick, 1L, 1L);
+    }
+
+    void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        for (Map<Object, Runnable> queue : queues) {
+            queue.clear();
+        }
+    }
+
+    /**
+     * Queues a task under a key. A task still pending under the same key is replaced in place,
+     * so it keeps its turn but runs the newest work.
+     */
+    void offer(Lane lane, Object key, Runnable work) {
+        Map<Object, Runnable> queue = queues[lane.ordinal()];
+        queue.put(key, work);
+        peakBacklog = Math.max(peakBacklog, backlog());
+    }
+
+    int backlog() {
+        int total = 0;
+        for (Map<Object, Runnable> queue : queues) {
+            total += queue.size();
+        }
+        return total;
+    }
+
+    int backlog(Lane lane) {
+        return queues[lane.ordinal()].size();
+    }
+
+    // Runs queued tasks round-robin until the budget is spent. At least one task runs per tick, so
+    // a budget of 0 still makes progress.
+    private void runTick() {
+        if (backlog() == 0) {
+            lastTickNanos = 0L;
+            return;
+        }
+        ticksWithWork++;
+
+        long start = System.nanoTime();
+        long elapsed = 0L;
+        int lanes = queues.length;
+        int lane = nextLane;
+        int idleLanes = 0;
+        boolean ranAny = false;
+        while (idleLanes < lanes && (!ranAny || elapsed < budgetNanos)) {
+            Map<Object, Runnable> queue = queues[lane];
+            lane = (lane + 1) % lanes;
+            if (queue.isEmpty()) {
+                idleLanes++;
+                continue;
+            }
+            idleLanes = 0;
+
+            Iterator<Runnable> it = queue.values().iterator();
+            Runnable work = it.next();
+            it.remove();
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                plugin.getLogger().warning("A scheduled live map task failed: " + e);
+            }
+            tasksRun++;
+            ranAny = true;
+            elapsed = System.nanoTime() - start;
+        }
+        nextLane = lane;
+        lastTickNanos = elapsed;
+
+        if (elapsed > budgetNanos) overruns++;
+        if (backlog() > 0) carriedOver++;
+    }
+
+    long getTicksWithWork() {
+        return ticksWithWork;
+    }
+
+    // Ticks where the work ran past the budget (a single task longer than the budget also counts).
+    long getOverruns() {
+        return overruns;
+    }
+
+    // Ticks that ended with work still queued.
+    long getCarriedOver() {
+        return carriedOver;
+    }
+
+    long getTasksRun() {
+        return tasksRun;
+    }
+
+    double getLastTickMillis() {
+        return lastTickNanos / 1_000_000.0;
+    }
+
+    int getPeakBacklog() {
+        return peakBacklog;
+    }
+}
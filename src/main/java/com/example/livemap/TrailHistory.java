@@ -0,0 +1,234 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Recent positions of every player, for drawing trails. Points live in preallocated struct-of-arrays ring
+ * buffers, one ring per player slot, so recording and drawing never allocate; only a new player beyond the
+ * current slot count grows the arrays. A point is only recorded when the player moved to another block.
+ *
+ * <p>Recording happens on the main thread. Each {@link #record} returns one of two preallocated
+ * {@link Frame}s, taking turns, that composition workers read while the next snapshot records into the other
+ * one. Every ring has a few spare entries beyond the trail length, and every entry remembers which point it
+ * holds, so a worker that falls behind skips overwritten points instead of drawing wrong ones. A worker two
+ * snapshots behind finds its frame rewritten, which {@link Frame#isRecorded} reports.
+ */
+final class TrailHistory {
+
+    // Ring entries beyond the trail length, so a frame stays intact for this many newer points.
+    private static final int SPARE_POINTS = 8;
+
+    private final int length;
+    private final int ring;
+
+    // Point storage, ring-major: slot s owns entries [s * ring, (s + 1) * ring).
+    private int[] pointX = new int[0];
+    private int[] pointZ = new int[0];
+    // Running point number stored in each entry, checked by readers against the number they expect.
+    private int[] pointNumber = new int[0];
+
+    // --- MAIN THREAD ONLY ---
+    private int slots = 0;
+    private int[] nextPoint = new int[0];   // running count of points written to the slot
+    private int[] trailStart = new int[0];  // first point number of the slot's current trail
+    private UUID[] slotWorld = new UUID[0];
+    private final Map<UUID, Integer> slotById = new HashMap<>();
+    private int[] freeSlots = new int[0];
+    private int freeCount = 0;
+    private final Frame[] frames = { new Frame(), new Frame() };
+    private int nextFrame = 0;
+
+    TrailHistory(int length) {
+        this.length = Math.max(2, length);
+        this.ring = this.length + SPARE_POINTS;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * Appends every snapshot player's position to their trail and returns the trails as of this snapshot.
+     * A player who changed worlds starts a new trail. Main thread only.
+     */
+    Frame record(PlayerSnapshot snapshot) {
+        Frame frame = frames[nextFrame];
+        nextFrame ^= 1;
+        // Bumped before rewriting, so a worker still reading this frame notices when it checks afterwards.
+        // The fence keeps the stores below from becoming visible before the bump.
+        frame.generation++;
+        VarHandle.storeStoreFence();
+        if (frame.state.length < snapshot.size() * 3) {
+            frame.state = new int[Math.max(nextPoint.length, snapshot.size()) * 3];
+        }
+        int[] state = frame.state;
+        for (int i = 0; i < snapshot.size(); i++) {
+            UUID worldId = snapshot.worldId(i);
+            int slot = slotFor(snapshot.playerId(i), worldId);
+            if (!worldId.equals(slotWorld[slot])) {
+                slotWorld[slot] = worldId;
+                trailStart[slot] = nextPoint[slot];
+            }
+
+            int x = snapshot.blockX(i);
+            int z = snapshot.blockZ(i);
+            int last = nextPoint[slot] - 1;
+            int lastEntry = slot * ring + Math.floorMod(last, ring);
+            boolean moved = last < trailStart[slot] || pointX[lastEntry] != x || pointZ[lastEntry] != z;
+            if (moved) {
+                int entry = slot * ring + Math.floorMod(nextPoint[slot], ring);
+                pointX[entry] = x;
+                pointZ[entry] = z;
+                pointNumber[entry] = nextPoint[slot];
+                nextPoint[slot]++;
+            }
+
+            state[i * 3] = slot;
+            state[i * 3 + 1] = nextPoint[slot];
+            state[i * 3 + 2] = trailStart[slot];
+        }
+        frame.pointX = pointX;
+        frame.pointZ = pointZ;
+        frame.pointNumber = pointNumber;
+        frame.ring = ring;
+        frame.length = length;
+        return frame;
+    }
+
+    /**
+     * Frees the player's slot, e.g. when they leave. Main thread only.
+     */
+    void remove(UUID playerId) {
+        Integer slot = slotById.remove(playerId);
+        if (slot == null) return;
+        slotWorld[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = grow(freeSlots, Math.max(8, freeSlots.length * 2));
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    // Forgets every trail. Slots keep their point counters, so frames still being drawn stay consistent.
+    void clear() {
+        slotById.clear();
+        freeCount = 0;
+        slots = 0;
+        Arrays.fill(slotWorld, null);
+    }
+
+    private int slotFor(UUID playerId, UUID worldId) {
+        Integer existing = slotById.get(playerId);
+        if (existing != null) return existing;
+
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slots == nextPoint.length) growSlots(Math.max(16, slots * 2));
+            slot = slots++;
+        }
+        // Point numbers keep counting across owners, so a reused slot's old points never pass the check.
+        trailStart[slot] = nextPoint[slot];
+        slotWorld[slot] = worldId;
+        slotById.put(playerId, slot);
+        return slot;
+    }
+
+    // New arrays instead of resizing in place: frames still being drawn keep reading the old ones.
+    private void growSlots(int capacity) {
+        pointX = grow(pointX, capacity * ring);
+        pointZ = grow(pointZ, capacity * ring);
+        pointNumber = grow(pointNumber, capacity * ring);
+        nextPoint = grow(nextPoint, capacity);
+        trailStart = grow(trailStart, capacity);
+        UUID[] worlds = new UUID[capacity];
+        System.arraycopy(slotWorld, 0, worlds, 0, slotWorld.length);
+        slotWorld = worlds;
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        int[] grown = new int[capacity];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    /**
+     * The trails as of one snapshot, indexed like that snapshot. Safe to read from any thread until the
+     * snapshot after next records into it again; readers take {@link #generation} when the frame is handed
+     * to them and check {@link #isRecorded} once they are done. This is a seqlock: the writer bumps the
+     * generation and then fences its later stores, the reader fences its earlier loads before the check.
+     */
+    static final class Frame {
+        private int[] pointX = new int[0];
+        private int[] pointZ = new int[0];
+        private int[] pointNumber = new int[0];
+        private int ring;
+        private int length;
+        // Per snapshot player: slot, next point number, first point number of the trail.
+        private int[] state = new int[0];
+        private volatile int generation = 0;
+
+        private Frame() {
+        }
+
+        // The recording this frame holds. Read on the main thread, right after record().
+        int generation() {
+            return generation;
+        }
+
+        // True if the frame still holds the given recording, so everything read from it since is consistent.
+        // The fence pairs with the writer's store fence in record().
+        boolean isRecorded(int expected) {
+            VarHandle.loadLoadFence();
+            return generation == expected;
+        }
+
+        // Changes whenever the player's trail gains a point or starts over.
+        long progress(int player) {
+            return ((long) state[player * 3 + 1] << 32) | (state[player * 3 + 2] & 0xFFFFFFFFL);
+        }
+
+        int length() {
+            return length;
+        }
+
+        // Number of points in the player's trail, the current position included.
+        int pointCount(int player) {
+            return Math.min(length, state[player * 3 + 1] - state[player * 3 + 2]);
+        }
+
+        // Ring entry of the player's point age steps back (0 is the newest), or -1 if it was overwritten.
+        int entry(int player, int age) {
+            int number = state[player * 3 + 1] - 1 - age;
+            int entry = state[player * 3] * ring + Math.floorMod(number, ring);
+            return pointNumber[entry] == number ? entry : -1;
+        }
+
+        int x(int entry) {
+            return pointX[entry];
+        }
+
+        int z(int entry) {
+            return pointZ[entry];
+        }
+    }
+}
@@ -0,0 +1,138 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.map.MapCanvas;
+import org.bukkit.map.MapCursorCollection;
+import org.bukkit.map.MapPalette;
+
+/**
+ * What one canvas of a live map currently shows: the shared canvas, or one viewer's canvas in contextual mode.
+ * {@link #repaint} is the whole canvas side of a render, kept free of plugin state so it also runs outside a server.
+ */
+final class ViewerCanvas {
+
+    // Saved background under everything drawn during the last render.
+    final OverlayBuffer overlay = new OverlayBuffer();
+
+    // Version of the composed overlay that the canvas currently shows.
+    int renderedVersion = -1;
+
+    // Revision of the base layer (terrain, plus the heatmap when shown) the canvas currently shows; 0 means none.
+    int renderedBaseRevision = 0;
+
+    // Contextual mode: this viewer's own players, and what the delta was last composed from.
+    final OverlayLayer delta = new OverlayLayer();
+    PlayerSnapshot deltaSnapshot;
+    OverlayComposer deltaComposer;
+    long deltaSignature = 0L;
+    private WallCanvas deltaCanvas;
+
+    // Estimated map packet bytes of the last repaint: its pixel patch, and the cursor list it left on the canvas.
+    int patchBytes = 0;
+    int cursorListBytes = 0;
+
+    // Bounding box of the pixels the current repaint touched, inclusive. Empty when dirtyMaxY < dirtyMinY.
+    private int dirtyMinX;
+    private int dirtyMinY;
+    private int dirtyMaxX;
+    private int dirtyMaxY;
+
+    /**
+     * Restores the background under the previous render, repaints the base layer if asked to, replaces the
+     * vanilla cursors with the layers' own and blits the shared overlay and then the viewer delta on top.
+     * Either layer may be null. Returns the number of pixels written, and leaves the estimated packet bytes
+     * in {@link #patchBytes} and {@link #cursorListBytes}.
+     *
+     * @param base pre-rendered terrain, or null to clear the base layer
+     */
+    int repaint(MapCanvas canvas, boolean redrawBase, byte[] base, OverlayLayer shared, OverlayLayer viewerDelta) {
+        dirtyMinX = OverlayBuffer.SIZE;
+        dirtyMinY = OverlayBuffer.SIZE;
+        dirtyMaxX = -1;
+        dirtyMaxY = -1;
+        includeOverlay();
+        int pixels = overlay.restore(canvas);
+
+        if (redrawBase) {
+            drawBaseLayer(canvas, base);
+            pixels += OverlayBuffer.SIZE * OverlayBuffer.SIZE;
+            include(0, 0, OverlayBuffer.SIZE - 1, OverlayBuffer.SIZE - 1);
+        }
+
+        MapCursorCollection cursors = canvas.getCursors();
+        for (int i = cursors.size() - 1; i >= 0; i--) {
+             cursors.removeCursor(cursors.getCursor(i));
+        }
+        int cursorCount = 0;
+        int cursorBytes = 0;
+
+        if (shared != null) {
+            pixels += shared.blitTo(overlay, canvas);
+            shared.cursors.addTo(cursors);
+            cursorCount += shared.cursors.size();
+            cursorBytes += shared.cursors.encodedBytes();
+        }
+        // The viewer's own delta goes on top of the shared overlay.
+        if (viewerDelta != null) {
+            pixels += viewerDelta.blitTo(overlay, canvas);
+            viewerDelta.cursors.addTo(cursors);
+            cursorCount += viewerDelta.cursors.size();
+            cursorBytes += viewerDelta.cursors.encodedBytes();
+        }
+        includeOverlay();
+
+        // The client is sent one rectangle around everything that changed.
+        patchBytes = MapPacketSize.patch(dirtyMaxX - dirtyMinX + 1, dirtyMaxY - dirtyMinY + 1);
+        cursorListBytes = MapPacketSize.HEADER_BYTES + MapPacketSize.varInt(cursorCount) + cursorBytes;
+        return pixels;
+    }
+
+    /**
+     * A canvas over the whole wall that draws only into {@link #delta}, at the given tile slot. Kept for as
+     * long as the wall keeps its shape, so composing the delta on every snapshot allocates nothing.
+     */
+    WallCanvas deltaCanvas(MapWall wall, int tileIndex) {
+        if (deltaCanvas == null || !deltaCanvas.hasShape(wall.tilesWide, wall.tilesHigh)) {
+            deltaCanvas = new WallCanvas(new OverlayLayer[wall.size()], wall.tilesWide, wall.tilesHigh);
+        }
+        deltaCanvas.showOnly(tileIndex, delta);
+        return deltaCanvas;
+    }
+
+    private void includeOverlay() {
+        if (!overlay.isEmpty()) {
+            include(overlay.getDirtyMinX(), overlay.getDirtyMinY(), overlay.getDirtyMaxX(), overlay.getDirtyMaxY());
+        }
+    }
+
+    private void include(int minX, int minY, int maxX, int maxY) {
+        dirtyMinX = Math.min(dirtyMinX, minX);
+        dirtyMinY = Math.min(dirtyMinY, minY);
+        dirtyMaxX = Math.max(dirtyMaxX, maxX);
+        dirtyMaxY = Math.max(dirtyMaxY, maxY);
+    }
+
+    // Paints the pre-rendered terrain. Pixels without terrain are left unset (-1), so the explored vanilla map shows through.
+    private static void drawBaseLayer(MapCanvas canvas, byte[] base) {
+        for (int y = 0; y < OverlayBuffer.SIZE; y++) {
+            for (int x = 0; x < OverlayBuffer.SIZE; x++) {
+                byte color = base == null ? 0 : base[(y << 7) | x];
+                canvas.setPixel(x, y, color == MapPalette.TRANSPARENT ? (byte) -1 : color);
+            }
+        }
+    }
+}
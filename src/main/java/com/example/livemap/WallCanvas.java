@@ -0,0 +1,87 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.bukkit.map.MapCursor;
+
+import java.util.Arrays;
+
+/**
+ * Drawing surface spanning every tile of a wall. Each pixel is routed to the overlay layer of the
+ * tile it falls on, so shapes near an edge continue onto the neighbouring map instead of being clipped.
+ */
+final class WallCanvas {
+
+    private final OverlayLayer[] layers;
+    private final int tilesWide;
+    private final int tilesHigh;
+
+    /**
+     * @param layers one layer per wall tile slot, row-major; null for holes
+     */
+    WallCanvas(OverlayLayer[] layers, int tilesWide, int tilesHigh) {
+        this.layers = layers;
+        this.tilesWide = tilesWide;
+        this.tilesHigh = tilesHigh;
+    }
+
+    // A canvas for a single map.
+    static WallCanvas of(OverlayLayer layer) {
+        return new WallCanvas(new OverlayLayer[] { layer }, 1, 1);
+    }
+
+    void setPixel(int wallX, int wallZ, byte colorId) {
+        int tile = tileIndexAt(wallX, wallZ);
+        if (tile >= 0) {
+            layers[tile].setPixel(wallX & 127, wallZ & 127, colorId);
+        }
+    }
+
+    // Adds a native cursor to the tile the pixel falls on; a cursor never spans two tiles.
+    void addCursor(int wallX, int wallZ, float yaw, MapCursor.Type type, String caption) {
+        int tile = tileIndexAt(wallX, wallZ);
+        if (tile >= 0) {
+            layers[tile].cursors.add(wallX & 127, wallZ & 127, yaw, type, caption);
+        }
+    }
+
+    // Slot index of the tile the pixel falls on, or -1 if it is off the wall or on a hole.
+    int tileIndexAt(int wallX, int wallZ) {
+        if (wallX < 0 || wallZ < 0) return -1;
+        int tileX = wallX >> 7;
+        int tileZ = wallZ >> 7;
+        if (tileX >= tilesWide || tileZ >= tilesHigh) return -1;
+
+        int tile = tileZ * tilesWide + tileX;
+        return layers[tile] == null ? -1 : tile;
+    }
+
+    boolean hasShape(int tilesWide, int tilesHigh) {
+        return this.tilesWide == tilesWide && this.tilesHigh == tilesHigh;
+    }
+
+    // Routes the given tile slot to the layer and turns every other slot into a hole, reusing the slot array.
+    void showOnly(int tileIndex, OverlayLayer layer) {
+        Arrays.fill(layers, null);
+        layers[tileIndex] = layer;
+    }
+
+    void clear() {
+        for (OverlayLayer layer : layers) {
+            if (layer != null) layer.clear();
+        }
+    }
+}
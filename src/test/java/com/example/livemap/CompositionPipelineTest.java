@@ -0,0 +1,94 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CompositionPipelineTest {
+
+    private static final UUID WORLD = new UUID(0L, 1L);
+    private static final byte[] PLAYER_COLOR_IDS = { 34 };
+
+    @Test
+    void failedCompositionIsRetriedAtTheSameVersion() throws InterruptedException {
+        List<LogRecord> warnings = Collections.synchronizedList(new ArrayList<>());
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.WARNING) warnings.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        CompositionPipeline pipeline = new CompositionPipeline(1, logger, new PerformanceMetrics());
+        try {
+            MapWall wall = MapWall.single(new MapArea(1, WORLD, 64, 64, 1));
+            PlayerSnapshot snapshot = PlayerSnapshot.of(new UUID[] { new UUID(1L, 1L) }, new String[] { "Player" },
+                    new UUID[] { WORLD }, new int[] { 64 }, new int[] { 64 }, new int[] { 64 }, new float[] { 0f }, 1);
+            int[] versions = { 7 };
+
+            IllegalStateException failure = new IllegalStateException("composition failed");
+            OverlayComposer failing = new OverlayComposer(PLAYER_COLOR_IDS, new LabelCache(16), new CursorStamps(16),
+                    false, false, null, 0, 0, false, false) {
+                @Override
+                int compose(PlayerSnapshot snapshot, MapWall wall, WallCanvas layer) {
+                    throw failure;
+                }
+            };
+            OverlayComposer working = new OverlayComposer(PLAYER_COLOR_IDS, new LabelCache(16), new CursorStamps(16),
+                    false, false, null, 0, 0, false, false);
+
+            pipeline.submit(wall, versions, snapshot, failing);
+
+            // The same versions arrive again with the next snapshot; they must be composed once the failed job is done.
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (pipeline.latest(1) == null && System.currentTimeMillis() < deadline) {
+                pipeline.submit(wall, versions, snapshot, working);
+                Thread.sleep(10L);
+            }
+
+            assertEquals(1, warnings.size(), "the failed composition was not logged once");
+            assertSame(failure, warnings.get(0).getThrown());
+            CompositionPipeline.Composed composed = pipeline.latest(1);
+            assertNotNull(composed, "the wall was never composed again after the failed job");
+            assertEquals(7, composed.version);
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+//      Copyright (C) 2025  LoafersMC
+
+//    This program is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 of the License, or
+
+//    This program is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+
+//    You should have received a copy of the GNU General Public License
+//    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+
+
+package com.example.livemap;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeatmapStoreTest {
+
+    private static final UUID WORLD = new UUID(0L, 1L);
+    private static final long HALF_LIFE = 20L;
+    private static final long SAMPLE_TICKS = 5L;
+
+    private final MapWall wall = MapWall.single(new MapArea(1, WORLD, 64, 64, 1));
+    private final HeatmapStore heatmaps = new HeatmapStore(HALF_LIFE, 1200L, 0.05, mapId -> { });
+
+    private static PlayerSnapshot playerAt(int x, int z) {
+        return PlayerSnapshot.of(new UUID[] { new UUID(1L, 1L) }, new String[] { "Player" }, new UUID[] { WORLD },
+                new int[] { x }, new int[] { 64 }, new int[] { z }, new float[] { 0f }, 1);
+    }
+
+    @Test
+    void firstSampleStoresItsDuration() {
+        heatmaps.update(wall, playerAt(10, 20), 0L, SAMPLE_TICKS);
+        assertEquals(SAMPLE_TICKS * 16, heatmaps.cell(1, 10, 20));
+    }
+
+    @Test
+    void sampleAfterLongIdleGapDoesNotSaturate() {
+        heatmaps.update(wall, playerAt(10, 20), 0L, SAMPLE_TICKS);
+
+        // 150 half-lives later the old heat is gone and the new sample weighs as much as a fresh one.
+        heatmaps.update(wall, playerAt(10, 20), 150 * HALF_LIFE, SAMPLE_TICKS);
+        int cell = heatmaps.cell(1, 10, 20);
+        assertTrue(cell >= SAMPLE_TICKS * 16 && cell < 2 * SAMPLE_TICKS * 16, "cell was " + cell);
+    }
+
+    @Test
+    void idleGapBetweenRescalesKeepsSamplesBounded() {
+        for (long halfLives : new long[] { 13, 40, 41, 500 }) {
+            heatmaps.update(wall, playerAt(30, 30), halfLives * HALF_LIFE, SAMPLE_TICKS);
+            int cell = heatmaps.cell(1, 30, 30);
+            assertTrue(cell > 0 && cell < 4 * SAMPLE_TICKS * 16, "cell after " + halfLives + " half-lives was " + cell);
+        }
+    }
+}